@@ -0,0 +1,90 @@
+package com.mindandgo.locationdroid.benchmark;
+
+import com.mindandgo.locationdroid.LocationSample;
+
+import java.util.Random;
+
+import static com.mindandgo.locationdroid.Geodesy.METERS_PER_DEGREE;
+
+/**
+ * Synthetic, deterministic fix streams used to feed the benchmarks.
+ */
+public enum FixStream {
+
+    /** A parked device: GPS fixes at 1 Hz scattered around the same point. */
+    STATIONARY(0f, 0f, LocationSample.PROVIDER_GPS, 4f, 15f),
+    /** A pedestrian: GPS fixes at 1 Hz at about 1.4 m/s. */
+    WALKING(1.4f, 0.4f, LocationSample.PROVIDER_GPS, 4f, 12f),
+    /** A car: GPS fixes at 1 Hz between 10 and 30 m/s. */
+    DRIVING(20f, 10f, LocationSample.PROVIDER_GPS, 3f, 10f),
+    /** A pedestrian with GPS, network and passive fixes interleaved. */
+    NOISY(1.4f, 0.4f, LocationSample.PROVIDER_UNKNOWN, 5f, 100f);
+
+    private static final double START_LATITUDE = 48.8566d;
+    private static final double START_LONGITUDE = 2.3522d;
+    private static final long START_TIME = 1480000000000L;
+    private static final long FIX_INTERVAL = 1000L;
+
+    private final float speed;
+    private final float speedJitter;
+    private final int provider;
+    private final float minAccuracy;
+    private final float maxAccuracy;
+
+    FixStream(float speed, float speedJitter, int provider, float minAccuracy, float maxAccuracy) {
+        this.speed = speed;
+        this.speedJitter = speedJitter;
+        this.provider = provider;
+        this.minAccuracy = minAccuracy;
+        this.maxAccuracy = maxAccuracy;
+    }
+
+    /**
+     * @param count , the number of fixes.
+     * @param seed , the random seed, the same seed always gives the same stream.
+     * @return the generated fixes.
+     */
+    public LocationSample[] generate(int count, long seed) {
+        Random random = new Random(seed);
+        LocationSample[] samples = new LocationSample[count];
+        double latitude = START_LATITUDE;
+        double longitude = START_LONGITUDE;
+        double bearing = random.nextDouble() * 2 * Math.PI;
+        long time = START_TIME;
+
+        for (int i = 0; i < count; i++) {
+            float currentSpeed = Math.max(0f, speed + (float) random.nextGaussian() * speedJitter);
+            bearing += random.nextGaussian() * 0.1d;
+            double distance = currentSpeed * FIX_INTERVAL / 1000d;
+            latitude += distance * Math.cos(bearing) / METERS_PER_DEGREE;
+            longitude += distance * Math.sin(bearing) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+            time += FIX_INTERVAL;
+
+            int fixProvider = provider == LocationSample.PROVIDER_UNKNOWN ? nextProvider(random) : provider;
+            float accuracy = minAccuracy + random.nextFloat() * (maxAccuracy - minAccuracy);
+            if (fixProvider == LocationSample.PROVIDER_NETWORK) {
+                // network fixes are less accurate and often a bit late
+                accuracy *= 2f;
+                time -= random.nextInt((int) FIX_INTERVAL);
+            }
+            double error = random.nextGaussian() * accuracy / 2d;
+            double errorBearing = random.nextDouble() * 2 * Math.PI;
+
+            samples[i] = new LocationSample().set(
+                    latitude + error * Math.cos(errorBearing) / METERS_PER_DEGREE,
+                    longitude + error * Math.sin(errorBearing) / METERS_PER_DEGREE,
+                    accuracy, true, currentSpeed, time, fixProvider);
+        }
+        return samples;
+    }
+
+    private static int nextProvider(Random random) {
+        int draw = random.nextInt(10);
+        if (draw < 5) {
+            return LocationSample.PROVIDER_GPS;
+        } else if (draw < 8) {
+            return LocationSample.PROVIDER_NETWORK;
+        }
+        return LocationSample.PROVIDER_PASSIVE;
+    }
+}
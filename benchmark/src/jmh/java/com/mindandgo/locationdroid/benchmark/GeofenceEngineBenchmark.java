@@ -0,0 +1,78 @@
+package com.mindandgo.locationdroid.benchmark;
+
+import com.mindandgo.locationdroid.Geofence;
+import com.mindandgo.locationdroid.GeofenceEngine;
+import com.mindandgo.locationdroid.GeofenceListener;
+import com.mindandgo.locationdroid.LocationSample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-fix cost of the geofence evaluation according the number of geofences.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class GeofenceEngineBenchmark {
+
+    private static final int STREAM_SIZE = 4096;
+    private static final int STREAM_MASK = STREAM_SIZE - 1;
+    private static final double START_LATITUDE = 48.8566d;
+    private static final double START_LONGITUDE = 2.3522d;
+
+    @Param({"100", "10000", "100000"})
+    public int geofenceCount;
+
+    private LocationSample[] samples;
+    private GeofenceEngine engine;
+    private int index;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        this.blackhole = blackhole;
+        samples = FixStream.DRIVING.generate(STREAM_SIZE, 42L);
+        engine = new GeofenceEngine(new GeofenceListener() {
+            @Override
+            public void onEnter(Geofence geofence, LocationSample location) {
+                blackhole.consume(geofence);
+            }
+
+            @Override
+            public void onExit(Geofence geofence, LocationSample location) {
+                blackhole.consume(geofence);
+            }
+
+            @Override
+            public void onDwell(Geofence geofence, LocationSample location) {
+                blackhole.consume(geofence);
+            }
+        }, 60000L);
+
+        // delivery zones of 50 to 200 meters scattered over 100 km around the track
+        Random random = new Random(7L);
+        for (int i = 0; i < geofenceCount; i++) {
+            engine.add(Geofence.circle("zone" + i,
+                    START_LATITUDE + (random.nextDouble() - 0.5d) * 0.9d,
+                    START_LONGITUDE + (random.nextDouble() - 0.5d) * 1.4d,
+                    50f + random.nextFloat() * 150f));
+        }
+        index = 0;
+    }
+
+    @Benchmark
+    public void evaluate() {
+        engine.evaluate(samples[index++ & STREAM_MASK]);
+    }
+}
@@ -0,0 +1,53 @@
+package com.mindandgo.locationdroid.benchmark;
+
+import com.mindandgo.locationdroid.LocationKalmanFilter;
+import com.mindandgo.locationdroid.LocationSample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-fix cost of the fusion mode (LocationDroid.setUsingFusion).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class LocationKalmanFilterBenchmark {
+
+    private static final int STREAM_SIZE = 4096;
+    private static final int STREAM_MASK = STREAM_SIZE - 1;
+
+    @Param({"STATIONARY", "DRIVING", "NOISY"})
+    public FixStream stream;
+
+    private LocationSample[] samples;
+    private LocationKalmanFilter filter;
+    private final LocationSample estimate = new LocationSample();
+    private int index;
+
+    @Setup
+    public void setUp() {
+        samples = stream.generate(STREAM_SIZE, 42L);
+        filter = new LocationKalmanFilter();
+        index = 0;
+    }
+
+    @Benchmark
+    public LocationSample fuse() {
+        int i = index++ & STREAM_MASK;
+        if (i == 0) {
+            // the stream restarts in the past
+            filter.reset();
+        }
+        filter.update(samples[i]);
+        return filter.getEstimate(estimate);
+    }
+}
@@ -0,0 +1,75 @@
+package com.mindandgo.locationdroid.benchmark;
+
+import com.mindandgo.locationdroid.LocationSample;
+import com.mindandgo.locationdroid.LocationSelector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-fix cost of the selection path: what LocationDroid.onLocationChanged and
+ * getLastBestKnownLocation run for every fix, without the Android plumbing.
+ *
+ * Run with: ./gradlew :benchmark:jmh
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class LocationSelectorBenchmark {
+
+    private static final int STREAM_SIZE = 4096;
+    private static final int STREAM_MASK = STREAM_SIZE - 1;
+
+    @Param({"STATIONARY", "WALKING", "DRIVING", "NOISY"})
+    public FixStream stream;
+
+    private LocationSample[] samples;
+    private LocationSelector selector;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        samples = stream.generate(STREAM_SIZE, 42L);
+        selector = new LocationSelector();
+        index = 0;
+    }
+
+    private LocationSample next() {
+        return samples[index++ & STREAM_MASK];
+    }
+
+    /** Equivalent of LocationDroid.onLocationChanged. */
+    @Benchmark
+    public boolean onLocationChanged() {
+        return selector.offer(next());
+    }
+
+    @Benchmark
+    public LocationSample accuracyAndTimeComparator() {
+        return LocationSelector.accuracyAndTimeComparator(next(), next());
+    }
+
+    /** Equivalent of LocationDroid.getLastBestKnownLocation with the three providers on. */
+    @Benchmark
+    public LocationSample getLastBestKnownLocation() {
+        LocationSample gps = next();
+        LocationSample network = next();
+        LocationSample passive = next();
+        LocationSample location = LocationSelector.accuracyAndTimeComparator(network, gps);
+        if (location != null) {
+            location = LocationSelector.accuracyAndTimeComparator(passive, location);
+        } else {
+            location = passive;
+        }
+        selector.setCurrent(location);
+        return location;
+    }
+}
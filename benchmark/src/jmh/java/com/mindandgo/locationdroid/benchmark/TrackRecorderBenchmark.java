@@ -0,0 +1,60 @@
+package com.mindandgo.locationdroid.benchmark;
+
+import com.mindandgo.locationdroid.LocationSample;
+import com.mindandgo.locationdroid.TrackRecorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording the accepted locations: a 10 hours track at 1 Hz.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class TrackRecorderBenchmark {
+
+    private static final int STREAM_SIZE = 4096;
+    private static final int STREAM_MASK = STREAM_SIZE - 1;
+    private static final int TRACK_CAPACITY = 36000;
+
+    private LocationSample[] samples;
+    private TrackRecorder recorder;
+    private TrackRecorder.Cursor cursor;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        samples = FixStream.DRIVING.generate(STREAM_SIZE, 42L);
+        recorder = new TrackRecorder(TRACK_CAPACITY);
+        for (int i = 0; i < TRACK_CAPACITY; i++) {
+            recorder.append(samples[i & STREAM_MASK]);
+        }
+        cursor = recorder.cursor();
+        index = 0;
+    }
+
+    @Benchmark
+    public long append() {
+        recorder.append(samples[index++ & STREAM_MASK]);
+        return recorder.getAppendCount();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double iterate() {
+        double sum = 0;
+        cursor.reset();
+        while (cursor.next()) {
+            sum += cursor.getLatitude();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,85 @@
+package com.mindandgo.locationdroid;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a CSV trace, one fix per line:
+ * <pre>
+ * time,provider,latitude,longitude,accuracy,speed
+ * 1463738400000,gps,48.8566,2.3522,5.0,1.2
+ * </pre>
+ * The time is in milliseconds since the epoch or in ISO 8601, the provider is a LocationManager
+ * provider name. The accuracy and the speed can be empty when unknown. The lines starting with
+ * '#' and a first line starting with "time" are skipped.
+ */
+public final class CsvTraceReader implements TraceReader {
+
+    private final BufferedReader reader;
+    private int lineNumber = 0;
+
+    /**
+     *
+     * @param reader , the CSV text.
+     */
+    public CsvTraceReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    @Override
+    public boolean read(LocationSample sample) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#") || (lineNumber == 1 && line.startsWith("time"))) {
+                continue;
+            }
+            parse(line, sample);
+            return true;
+        }
+        return false;
+    }
+
+    private void parse(String line, LocationSample sample) throws IOException {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 4) {
+            throw new IOException("Line " + lineNumber + ": expected at least 4 fields");
+        }
+        try {
+            String time = fields[0].trim();
+            String accuracy = fields.length > 4 ? fields[4].trim() : "";
+            String speed = fields.length > 5 ? fields[5].trim() : "";
+            sample.set(Double.parseDouble(fields[2].trim()),
+                    Double.parseDouble(fields[3].trim()),
+                    accuracy.isEmpty() ? 0f : Float.parseFloat(accuracy),
+                    !accuracy.isEmpty(),
+                    speed.isEmpty() ? 0f : Float.parseFloat(speed),
+                    time.indexOf('T') > 0 ? TraceTime.parseIso8601(time) : Long.parseLong(time),
+                    providerId(fields[1].trim()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param provider , a provider name, "gps", "network" or "passive".
+     * @return the matching LocationSample provider id.
+     */
+    static int providerId(String provider) {
+        if ("gps".equalsIgnoreCase(provider)) {
+            return LocationSample.PROVIDER_GPS;
+        } else if ("network".equalsIgnoreCase(provider)) {
+            return LocationSample.PROVIDER_NETWORK;
+        } else if ("passive".equalsIgnoreCase(provider)) {
+            return LocationSample.PROVIDER_PASSIVE;
+        }
+        return LocationSample.PROVIDER_UNKNOWN;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,104 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Distances and bearings between coordinates in degrees, without allocation.
+ *
+ * Unlike Location.distanceBetween no result array is needed: the methods take and return
+ * primitives. {@link #haversine} is exact on a sphere, {@link #equirectangular} is faster and
+ * precise enough below a few kilometers, and an {@link Equirectangular} instance also caches the
+ * cosine of the latitude for a stream of close coordinates.
+ */
+public final class Geodesy {
+
+    /** Mean radius of the Earth in meters. */
+    public static final double EARTH_RADIUS = 6371008.8d;
+    /** Length in meters of one degree of latitude, as used by the local projections. */
+    public static final double METERS_PER_DEGREE = 111320d;
+
+    private Geodesy() {
+    }
+
+    /**
+     * @return the great circle distance in meters.
+     */
+    public static double haversine(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double sinDeltaPhi = Math.sin((phi2 - phi1) / 2);
+        double sinDeltaLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinDeltaPhi * sinDeltaPhi + Math.cos(phi1) * Math.cos(phi2) * sinDeltaLambda * sinDeltaLambda;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1d, Math.sqrt(a)));
+    }
+
+    /**
+     * @return the distance in meters, equirectangular approximation.
+     */
+    public static double equirectangular(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double x = (longitude2 - longitude1) * Math.cos(Math.toRadians((latitude1 + latitude2) / 2));
+        double y = latitude2 - latitude1;
+        return Math.sqrt(x * x + y * y) * METERS_PER_DEGREE;
+    }
+
+    /**
+     * @return the initial bearing in degrees from the first coordinate to the second one,
+     * between 0 (north) included and 360 excluded, clockwise.
+     */
+    public static float bearing(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double deltaLambda = Math.toRadians(longitude2 - longitude1);
+        double y = Math.sin(deltaLambda) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(deltaLambda);
+        double bearing = Math.toDegrees(Math.atan2(y, x));
+        return (float) (bearing < 0 ? bearing + 360 : bearing);
+    }
+
+    /**
+     * Equirectangular distance caching the cosine of the latitude: it is only computed again when
+     * the latitude moves by more than the tolerance. Not thread-safe.
+     */
+    public static final class Equirectangular {
+
+        // about 1 km: the relative change of the cosine is tan(latitude) * tolerance in radians,
+        // less than 0.1% below 80 degrees, 0.5% below 88 degrees
+        static final double DEFAULT_TOLERANCE = 0.01d;
+
+        private final double tolerance;
+        private double cachedLatitude = Double.NaN;
+        private double cachedCos;
+
+        public Equirectangular() {
+            this(DEFAULT_TOLERANCE);
+        }
+
+        /**
+         *
+         * @param tolerance , the latitude change in degrees before the cosine is computed again.
+         *                  Default = 0.01 degree.
+         */
+        public Equirectangular(double tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        /**
+         * @return the distance in meters.
+         */
+        public double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+            double x = (longitude2 - longitude1) * cos(latitude1);
+            double y = latitude2 - latitude1;
+            return Math.sqrt(x * x + y * y) * METERS_PER_DEGREE;
+        }
+
+        /**
+         * @return the cosine of a latitude close to the given one.
+         */
+        public double cos(double latitude) {
+            // NaN on the first call: the comparison is false
+            if (!(Math.abs(latitude - cachedLatitude) <= tolerance)) {
+                cachedLatitude = latitude;
+                cachedCos = Math.cos(Math.toRadians(latitude));
+            }
+            return cachedCos;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * A circular or polygonal zone watched by a {@link GeofenceEngine}. Immutable.
+ */
+public final class Geofence {
+
+    private final String id;
+    private final boolean circle;
+    // circle
+    private final double latitude;
+    private final double longitude;
+    private final float radius;
+    // polygon
+    private final double[] latitudes;
+    private final double[] longitudes;
+    // bounding box
+    final double minLatitude;
+    final double maxLatitude;
+    final double minLongitude;
+    final double maxLongitude;
+
+    private Geofence(String id, double latitude, double longitude, float radius) {
+        this.id = id;
+        this.circle = true;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = radius;
+        this.latitudes = null;
+        this.longitudes = null;
+        double latitudeRadius = radius / Geodesy.METERS_PER_DEGREE;
+        double longitudeRadius = radius / (Geodesy.METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+        this.minLatitude = latitude - latitudeRadius;
+        this.maxLatitude = latitude + latitudeRadius;
+        this.minLongitude = longitude - longitudeRadius;
+        this.maxLongitude = longitude + longitudeRadius;
+    }
+
+    private Geofence(String id, double[] latitudes, double[] longitudes) {
+        this.id = id;
+        this.circle = false;
+        this.latitude = 0;
+        this.longitude = 0;
+        this.radius = 0;
+        this.latitudes = latitudes.clone();
+        this.longitudes = longitudes.clone();
+        double minLatitude = Double.MAX_VALUE;
+        double maxLatitude = -Double.MAX_VALUE;
+        double minLongitude = Double.MAX_VALUE;
+        double maxLongitude = -Double.MAX_VALUE;
+        for (int i = 0; i < latitudes.length; i++) {
+            minLatitude = Math.min(minLatitude, latitudes[i]);
+            maxLatitude = Math.max(maxLatitude, latitudes[i]);
+            minLongitude = Math.min(minLongitude, longitudes[i]);
+            maxLongitude = Math.max(maxLongitude, longitudes[i]);
+        }
+        this.minLatitude = minLatitude;
+        this.maxLatitude = maxLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    /**
+     * @param id , the identifier of the zone.
+     * @param latitude , the latitude of the center.
+     * @param longitude , the longitude of the center.
+     * @param radius , the radius in meters.
+     * @return a circular zone.
+     */
+    public static Geofence circle(String id, double latitude, double longitude, float radius) {
+        if (radius <= 0) {
+            throw new IllegalArgumentException("Geofence radius cannot be lower than 0");
+        }
+        return new Geofence(id, latitude, longitude, radius);
+    }
+
+    /**
+     * @param id , the identifier of the zone.
+     * @param latitudes , the latitudes of the vertices.
+     * @param longitudes , the longitudes of the vertices, in the same order.
+     * @return a polygonal zone.
+     */
+    public static Geofence polygon(String id, double[] latitudes, double[] longitudes) {
+        if (latitudes.length != longitudes.length || latitudes.length < 3) {
+            throw new IllegalArgumentException("Geofence polygon needs at least 3 vertices");
+        }
+        return new Geofence(id, latitudes, longitudes);
+    }
+
+    /**
+     * @return true if the point is inside the zone.
+     */
+    public boolean contains(double pointLatitude, double pointLongitude) {
+        if (pointLatitude < minLatitude || pointLatitude > maxLatitude
+                || pointLongitude < minLongitude || pointLongitude > maxLongitude) {
+            return false;
+        }
+        if (circle) {
+            double x = (pointLongitude - longitude) * Math.cos(Math.toRadians(latitude));
+            double y = pointLatitude - latitude;
+            return (x * x + y * y) * Geodesy.METERS_PER_DEGREE * Geodesy.METERS_PER_DEGREE <= (double) radius * radius;
+        }
+        // ray casting
+        boolean inside = false;
+        for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+            if ((latitudes[i] > pointLatitude) != (latitudes[j] > pointLatitude)
+                    && pointLongitude < (longitudes[j] - longitudes[i]) * (pointLatitude - latitudes[i])
+                    / (latitudes[j] - latitudes[i]) + longitudes[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean isCircle() {
+        return circle;
+    }
+}
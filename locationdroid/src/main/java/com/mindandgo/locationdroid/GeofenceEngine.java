@@ -0,0 +1,322 @@
+package com.mindandgo.locationdroid;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Detects the enter, exit and dwell transitions of many geofences.
+ *
+ * The geofences are indexed in a uniform grid of latitude/longitude cells, so a location is only
+ * tested against the geofences of its cell and the ones it is already in: the cost of a location
+ * does not depend on the total number of geofences.
+ *
+ * Geofences can be added and removed from any thread at any time. The changes are queued without
+ * lock and applied by the thread evaluating the locations before its next evaluation.
+ */
+public final class GeofenceEngine {
+
+    // ==========================================================
+    // Constants
+    // ==========================================================
+    // about 1.1 km of latitude
+    static final double DEFAULT_CELL_SIZE = 0.01d;
+
+    private final double cellSize;
+    private final long dwellTime;
+    private final GeofenceListener listener;
+
+    private final ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+    private final CellMap cells = new CellMap();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final List<Entry> insideEntries = new ArrayList<>();
+    private long evaluation = 0;
+
+    /**
+     *
+     * @param listener , the listener of the transitions, called on the thread evaluating the locations.
+     * @param dwellTime , the time in milliseconds in a geofence before a dwell, 0 to disable the dwells.
+     */
+    public GeofenceEngine(GeofenceListener listener, long dwellTime) {
+        this(listener, dwellTime, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     *
+     * @param listener , the listener of the transitions, called on the thread evaluating the locations.
+     * @param dwellTime , the time in milliseconds in a geofence before a dwell, 0 to disable the dwells.
+     * @param cellSize , the size of a grid cell in degrees, close to the size of the typical geofence.
+     *                 Default = 0.01 degree.
+     */
+    public GeofenceEngine(GeofenceListener listener, long dwellTime, double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size cannot be lower than 0");
+        }
+        this.listener = listener;
+        this.dwellTime = dwellTime;
+        this.cellSize = cellSize;
+    }
+
+    // ==========================================================
+    // Geofences
+    // ==========================================================
+
+    /**
+     * Add a geofence, replacing the geofence with the same id. Can be called from any thread.
+     *
+     * @param geofence , the geofence.
+     */
+    public void add(Geofence geofence) {
+        changes.add(new Change(geofence, null));
+    }
+
+    /**
+     * Remove a geofence, no exit is reported for it. Can be called from any thread.
+     *
+     * @param id , the id of the geofence.
+     */
+    public void remove(String id) {
+        changes.add(new Change(null, id));
+    }
+
+    private void applyChanges() {
+        Change change;
+        while ((change = changes.poll()) != null) {
+            if (change.added != null) {
+                removeEntry(change.added.getId());
+                addEntry(change.added);
+            } else {
+                removeEntry(change.removedId);
+            }
+        }
+    }
+
+    private void addEntry(Geofence geofence) {
+        Entry entry = new Entry(geofence);
+        entries.put(geofence.getId(), entry);
+        for (long row = row(geofence.minLatitude); row <= row(geofence.maxLatitude); row++) {
+            for (long column = column(geofence.minLongitude); column <= column(geofence.maxLongitude); column++) {
+                long key = key(row, column);
+                List<Entry> cell = cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<>();
+                    cells.put(key, cell);
+                }
+                cell.add(entry);
+            }
+        }
+    }
+
+    private void removeEntry(String id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        Geofence geofence = entry.geofence;
+        for (long row = row(geofence.minLatitude); row <= row(geofence.maxLatitude); row++) {
+            for (long column = column(geofence.minLongitude); column <= column(geofence.maxLongitude); column++) {
+                long key = key(row, column);
+                List<Entry> cell = cells.get(key);
+                if (cell != null) {
+                    cell.remove(entry);
+                    if (cell.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+        if (entry.inside) {
+            insideEntries.remove(entry);
+        }
+    }
+
+    /**
+     * @return the number of geofences, the queued changes included once applied.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    // ==========================================================
+    // Evaluation
+    // ==========================================================
+
+    /**
+     * Evaluate a new location, calling the listener for each transition.
+     * Must always be called from the same thread.
+     *
+     * @param location , the new location, its time in milliseconds.
+     */
+    public void evaluate(LocationSample location) {
+        applyChanges();
+        evaluation++;
+
+        // the geofences the location was in: exit or dwell
+        for (int i = insideEntries.size() - 1; i >= 0; i--) {
+            Entry entry = insideEntries.get(i);
+            entry.evaluation = evaluation;
+            if (!entry.geofence.contains(location.latitude, location.longitude)) {
+                entry.inside = false;
+                insideEntries.remove(i);
+                listener.onExit(entry.geofence, location);
+            } else {
+                checkDwell(entry, location);
+            }
+        }
+
+        // the other geofences of the cell: enter
+        List<Entry> cell = cells.get(key(row(location.latitude), column(location.longitude)));
+        if (cell == null) {
+            return;
+        }
+        for (int i = 0, size = cell.size(); i < size; i++) {
+            Entry entry = cell.get(i);
+            if (entry.evaluation != evaluation && entry.geofence.contains(location.latitude, location.longitude)) {
+                entry.inside = true;
+                entry.enterTime = location.time;
+                entry.dwellReported = false;
+                insideEntries.add(entry);
+                listener.onEnter(entry.geofence, location);
+                checkDwell(entry, location);
+            }
+        }
+    }
+
+    private void checkDwell(Entry entry, LocationSample location) {
+        if (dwellTime > 0 && !entry.dwellReported && location.time - entry.enterTime >= dwellTime) {
+            entry.dwellReported = true;
+            listener.onDwell(entry.geofence, location);
+        }
+    }
+
+    private long row(double latitude) {
+        return (long) Math.floor(latitude / cellSize);
+    }
+
+    private long column(double longitude) {
+        return (long) Math.floor(longitude / cellSize);
+    }
+
+    private static long key(long row, long column) {
+        return (row << 32) ^ (column & 0xFFFFFFFFL);
+    }
+
+    /**
+     * A geofence with the state of the device relative to it.
+     */
+    private static final class Entry {
+
+        private final Geofence geofence;
+        private boolean inside = false;
+        private boolean dwellReported = false;
+        private long enterTime;
+        private long evaluation = 0;
+
+        private Entry(Geofence geofence) {
+            this.geofence = geofence;
+        }
+    }
+
+    /**
+     * Open addressing map of the cells by key, looked up without boxing the key.
+     */
+    private static final class CellMap {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private long[] keys = new long[INITIAL_CAPACITY];
+        // null for a free slot
+        private Object[] cells = new Object[INITIAL_CAPACITY];
+        private int size = 0;
+
+        @SuppressWarnings("unchecked")
+        private List<Entry> get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); cells[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return (List<Entry>) cells[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param key , a key not in the map.
+         * @param cell , the geofences of the cell.
+         */
+        private void put(long key, List<Entry> cell) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            insert(key, cell);
+            size++;
+        }
+
+        private void insert(long key, Object cell) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (cells[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            cells[i] = cell;
+        }
+
+        private void remove(long key) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (cells[i] != null && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (cells[i] == null) {
+                return;
+            }
+            cells[i] = null;
+            size--;
+            // move back the next keys of the run whose home slot is not after the free slot
+            for (int j = (i + 1) & mask; cells[j] != null; j = (j + 1) & mask) {
+                int home = slot(keys[j], mask);
+                boolean inPlace = i <= j ? i < home && home <= j : i < home || home <= j;
+                if (!inPlace) {
+                    keys[i] = keys[j];
+                    cells[i] = cells[j];
+                    cells[j] = null;
+                    i = j;
+                }
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldCells = cells;
+            keys = new long[oldKeys.length * 2];
+            cells = new Object[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCells[i] != null) {
+                    insert(oldKeys[i], oldCells[i]);
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & mask;
+        }
+    }
+
+    /**
+     * A queued addition or removal.
+     */
+    private static final class Change {
+
+        private final Geofence added;
+        private final String removedId;
+
+        private Change(Geofence added, String removedId) {
+            this.added = added;
+            this.removedId = removedId;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Listener of the transitions detected by a {@link GeofenceEngine}.
+ */
+public interface GeofenceListener {
+
+    /**
+     * @param geofence , the zone entered.
+     * @param location , the location inside the zone, only valid during the call.
+     */
+    void onEnter(Geofence geofence, LocationSample location);
+
+    /**
+     * @param geofence , the zone left.
+     * @param location , the location outside the zone, only valid during the call.
+     */
+    void onExit(Geofence geofence, LocationSample location);
+
+    /**
+     * Called once when the device has stayed in the zone for the dwell time.
+     *
+     * @param geofence , the zone.
+     * @param location , the location inside the zone, only valid during the call.
+     */
+    void onDwell(Geofence geofence, LocationSample location);
+}
@@ -0,0 +1,199 @@
+package com.mindandgo.locationdroid;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the track, route and way points of a GPX trace, in document order.
+ *
+ * Each point gives its lat and lon attributes and its time element. The accuracy is estimated
+ * from the hdop element multiplied by {@link NmeaTraceReader#UERE}, the speed comes from the
+ * GPX 1.0 speed element and the provider from the src element ("gps", "network" or "passive")
+ * when present. The document is scanned as a stream, only the current point is kept in memory.
+ */
+public final class GpxTraceReader implements TraceReader {
+
+    private final Reader reader;
+    private final int defaultProvider;
+    private final StringBuilder buffer = new StringBuilder();
+
+    // Current point
+    private boolean inPoint = false;
+    private String element = null;
+    private double latitude;
+    private double longitude;
+    private long time;
+    private float hdop;
+    private boolean hasHdop;
+    private float speed;
+    private int provider;
+
+    /**
+     * Reader of a GPS trace.
+     *
+     * @param reader , the GPX document.
+     */
+    public GpxTraceReader(Reader reader) {
+        this(reader, LocationSample.PROVIDER_GPS);
+    }
+
+    /**
+     *
+     * @param reader , the GPX document.
+     * @param defaultProvider , the LocationSample provider id of the points without src element.
+     */
+    public GpxTraceReader(Reader reader, int defaultProvider) {
+        this.reader = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+        this.defaultProvider = defaultProvider;
+    }
+
+    @Override
+    public boolean read(LocationSample sample) throws IOException {
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c != '<') {
+                if (element != null) {
+                    buffer.append((char) c);
+                }
+                continue;
+            }
+            String tag = readTag();
+            if (tag.startsWith("?") || tag.startsWith("!")) {
+                continue;
+            }
+            boolean closing = tag.startsWith("/");
+            String name = localName(tag);
+            if (isPoint(name)) {
+                if (!closing) {
+                    startPoint(tag);
+                    if (!tag.endsWith("/")) {
+                        continue;
+                    }
+                }
+                if (inPoint) {
+                    endPoint(sample);
+                    return true;
+                }
+            } else if (inPoint && !closing) {
+                element = tag.endsWith("/") ? null : name;
+                buffer.setLength(0);
+            } else if (inPoint && name.equals(element)) {
+                readElement(element, buffer.toString().trim());
+                element = null;
+            }
+        }
+        if (inPoint) {
+            throw new IOException("Unexpected end of the GPX document in a point");
+        }
+        return false;
+    }
+
+    /**
+     * @return the content of the tag between '<' and '>', the comments being read to their end.
+     */
+    private String readTag() throws IOException {
+        StringBuilder tag = new StringBuilder();
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c == '>' && (tag.length() < 3 || !tag.toString().startsWith("!--")
+                    || tag.toString().endsWith("--"))) {
+                return tag.toString();
+            }
+            tag.append((char) c);
+        }
+        throw new IOException("Unexpected end of the GPX document in a tag");
+    }
+
+    private static String localName(String tag) {
+        int start = tag.startsWith("/") ? 1 : 0;
+        int end = start;
+        while (end < tag.length() && !Character.isWhitespace(tag.charAt(end)) && tag.charAt(end) != '/') {
+            end++;
+        }
+        String name = tag.substring(start, end);
+        int colon = name.indexOf(':');
+        return colon < 0 ? name : name.substring(colon + 1);
+    }
+
+    private static boolean isPoint(String name) {
+        return "trkpt".equals(name) || "rtept".equals(name) || "wpt".equals(name);
+    }
+
+    private void startPoint(String tag) throws IOException {
+        String lat = attribute(tag, "lat");
+        String lon = attribute(tag, "lon");
+        if (lat == null || lon == null) {
+            throw new IOException("GPX point without lat or lon: <" + tag + ">");
+        }
+        try {
+            latitude = Double.parseDouble(lat);
+            longitude = Double.parseDouble(lon);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid GPX point: <" + tag + ">");
+        }
+        inPoint = true;
+        element = null;
+        time = 0;
+        hasHdop = false;
+        speed = 0f;
+        provider = defaultProvider;
+    }
+
+    private void readElement(String name, String text) throws IOException {
+        try {
+            if ("time".equals(name)) {
+                time = TraceTime.parseIso8601(text);
+            } else if ("hdop".equals(name)) {
+                hdop = Float.parseFloat(text);
+                hasHdop = true;
+            } else if ("speed".equals(name)) {
+                speed = Float.parseFloat(text);
+            } else if ("src".equals(name)) {
+                int id = CsvTraceReader.providerId(text);
+                provider = id == LocationSample.PROVIDER_UNKNOWN ? defaultProvider : id;
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid GPX " + name + ": " + text);
+        }
+    }
+
+    private void endPoint(LocationSample sample) {
+        sample.set(latitude, longitude, hasHdop ? hdop * NmeaTraceReader.UERE : 0f, hasHdop,
+                speed, time, provider);
+        inPoint = false;
+        element = null;
+    }
+
+    /**
+     * @return the value of the attribute of the tag, null if missing.
+     */
+    static String attribute(String tag, String name) {
+        int index = 0;
+        while ((index = tag.indexOf(name, index)) >= 0) {
+            int equals = index + name.length();
+            while (equals < tag.length() && Character.isWhitespace(tag.charAt(equals))) {
+                equals++;
+            }
+            boolean whole = index > 0 && Character.isWhitespace(tag.charAt(index - 1));
+            if (whole && equals < tag.length() - 1 && tag.charAt(equals) == '=') {
+                int quote = equals + 1;
+                while (quote < tag.length() && Character.isWhitespace(tag.charAt(quote))) {
+                    quote++;
+                }
+                char delimiter = quote < tag.length() ? tag.charAt(quote) : ' ';
+                int end = tag.indexOf(delimiter, quote + 1);
+                if ((delimiter == '"' || delimiter == '\'') && end > 0) {
+                    return tag.substring(quote + 1, end);
+                }
+            }
+            index = equals;
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,134 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Fixed capacity batch of fixes, stored in preallocated primitive arrays.
+ *
+ * The same instance is reused for every delivery: read it inside the callback, it is cleared
+ * right after.
+ */
+public final class LocationBatch {
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] accuracies;
+    private final boolean[] hasAccuracies;
+    private final float[] speeds;
+    private final long[] times;
+    private final int[] providers;
+    private int size = 0;
+
+    /**
+     *
+     * @param capacity , the maximum number of fixes of the batch.
+     */
+    public LocationBatch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Batch capacity cannot be lower than 1");
+        }
+        this.latitudes = new double[capacity];
+        this.longitudes = new double[capacity];
+        this.accuracies = new float[capacity];
+        this.hasAccuracies = new boolean[capacity];
+        this.speeds = new float[capacity];
+        this.times = new long[capacity];
+        this.providers = new int[capacity];
+    }
+
+    /**
+     * Append a fix to the batch.
+     *
+     * @param sample , the fix to copy.
+     * @return true if the batch is full after this fix.
+     */
+    public boolean add(LocationSample sample) {
+        if (isFull()) {
+            throw new IllegalStateException("Batch is full");
+        }
+        latitudes[size] = sample.latitude;
+        longitudes[size] = sample.longitude;
+        accuracies[size] = sample.accuracy;
+        hasAccuracies[size] = sample.hasAccuracy;
+        speeds[size] = sample.speed;
+        times[size] = sample.time;
+        providers[size] = sample.provider;
+        size++;
+        return isFull();
+    }
+
+    /**
+     * Copy a fix of the batch into a sample.
+     *
+     * @param index , the index of the fix, 0 being the oldest one.
+     * @param sample , the sample to fill.
+     * @return the filled sample.
+     */
+    public LocationSample get(int index, LocationSample sample) {
+        checkIndex(index);
+        return sample.set(latitudes[index], longitudes[index], accuracies[index], hasAccuracies[index],
+                speeds[index], times[index], providers[index]);
+    }
+
+    public double getLatitude(int index) {
+        checkIndex(index);
+        return latitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        checkIndex(index);
+        return longitudes[index];
+    }
+
+    public float getAccuracy(int index) {
+        checkIndex(index);
+        return accuracies[index];
+    }
+
+    public boolean hasAccuracy(int index) {
+        checkIndex(index);
+        return hasAccuracies[index];
+    }
+
+    public float getSpeed(int index) {
+        checkIndex(index);
+        return speeds[index];
+    }
+
+    public long getTime(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    public int getProvider(int index) {
+        checkIndex(index);
+        return providers[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return times.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == times.length;
+    }
+
+    /**
+     * Remove all the fixes of the batch.
+     */
+    public void clear() {
+        size = 0;
+    }
+}
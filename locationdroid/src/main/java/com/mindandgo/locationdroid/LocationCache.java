@@ -0,0 +1,303 @@
+package com.mindandgo.locationdroid;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the last accepted location in a small file, so a cold start can use it before the
+ * providers give a fix, see {@link LocationDroid#setLocationCache(LocationCache)}.
+ *
+ * The writes are rate limited: a location is written at most once per write interval, the
+ * latest one waiting for the next write or for {@link #flush()}. The writes run on the write
+ * executor, never on the thread receiving the location updates. The file is written to a
+ * temporary file, synced to the disk then renamed, a crash never leaves a partial location. A
+ * cached location older than the max age, or from the future, is stale and is not used by the
+ * warm start.
+ */
+public final class LocationCache {
+
+    /**
+     * State of the cached location.
+     */
+    public enum Status {
+        /** No location cached or the file is unreadable. */
+        EMPTY,
+        /** The cached location is younger than the max age. */
+        FRESH,
+        /** The cached location is older than the max age. */
+        STALE
+    }
+
+    // ==========================================================
+    // Format
+    // ==========================================================
+    static final int MAGIC = 0x4C444331; // "LDC1"
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    // ==========================================================
+    // Constants
+    // ==========================================================
+    static final long DEFAULT_WRITE_INTERVAL = 30000L;
+    static final long DEFAULT_MAX_AGE = 3600000L;
+    private static final String THREAD_NAME = "LocationCache";
+    private static final long THREAD_KEEP_ALIVE = 10000L;
+
+    private final File file;
+    private final long writeInterval;
+    private final long maxAge;
+    private final Executor writeExecutor;
+
+    private final LocationSample cached = new LocationSample();
+    private boolean loaded = false;
+    private boolean hasCached = false;
+    private boolean dirty = false;
+    private boolean writeScheduled = false;
+    private long lastWriteTime = Long.MIN_VALUE;
+
+    // Lock order: writeLock, then this
+    private final Object writeLock = new Object();
+    // guarded by writeLock
+    private final LocationSample written = new LocationSample();
+    private final Runnable writer = new Runnable() {
+        @Override
+        public void run() {
+            writeCached();
+        }
+    };
+
+    /**
+     *
+     * @param file , the cache file.
+     */
+    public LocationCache(File file) {
+        this(file, DEFAULT_WRITE_INTERVAL, DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * The writes run on a background thread of the cache, stopped when idle.
+     *
+     * @param file , the cache file.
+     * @param writeInterval , the minimum time in milliseconds between two writes. Default = 30 seconds.
+     * @param maxAge , the age in milliseconds after which a cached location is stale. Default = 1 hour.
+     */
+    public LocationCache(File file, long writeInterval, long maxAge) {
+        this(file, writeInterval, maxAge, newWriteExecutor());
+    }
+
+    /**
+     *
+     * @param file , the cache file.
+     * @param writeInterval , the minimum time in milliseconds between two writes. Default = 30 seconds.
+     * @param maxAge , the age in milliseconds after which a cached location is stale. Default = 1 hour.
+     * @param writeExecutor , the executor writing the file, a background one.
+     */
+    public LocationCache(File file, long writeInterval, long maxAge, Executor writeExecutor) {
+        if (writeInterval < 0) {
+            throw new IllegalArgumentException("Write interval cannot be lower than 0");
+        }
+        if (maxAge < 0) {
+            throw new IllegalArgumentException("Max age cannot be lower than 0");
+        }
+        if (writeExecutor == null) {
+            throw new IllegalArgumentException("Write executor cannot be null");
+        }
+        this.file = file;
+        this.writeInterval = writeInterval;
+        this.maxAge = maxAge;
+        this.writeExecutor = writeExecutor;
+    }
+
+    private static Executor newWriteExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, THREAD_KEEP_ALIVE,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // ==========================================================
+    // Write
+    // ==========================================================
+
+    /**
+     * Cache a new location, written if the last write is older than the write interval.
+     *
+     * @param sample , the location, its time in milliseconds since the epoch.
+     * @param now , the current time in milliseconds.
+     * @return true if the write of the location has been handed to the write executor.
+     */
+    public synchronized boolean put(LocationSample sample, long now) {
+        cached.copyFrom(sample);
+        hasCached = true;
+        loaded = true;
+        dirty = true;
+        if (lastWriteTime != Long.MIN_VALUE && now - lastWriteTime < writeInterval) {
+            return false;
+        }
+        scheduleWrite();
+        lastWriteTime = now;
+        return true;
+    }
+
+    /**
+     * Write the location waiting for the write interval, if any, on the write executor.
+     */
+    public synchronized void flush() {
+        if (dirty) {
+            scheduleWrite();
+        }
+    }
+
+    private void scheduleWrite() {
+        if (!writeScheduled) {
+            writeScheduled = true;
+            writeExecutor.execute(writer);
+        }
+    }
+
+    private void writeCached() {
+        synchronized (writeLock) {
+            synchronized (this) {
+                writeScheduled = false;
+                if (!dirty) {
+                    return;
+                }
+                written.copyFrom(cached);
+                dirty = false;
+            }
+            try {
+                write(written);
+            } catch (IOException e) {
+                // the cache is only a hint for the next start, the next write will retry
+                synchronized (this) {
+                    dirty = true;
+                }
+            }
+        }
+    }
+
+    private void write(LocationSample sample) throws IOException {
+        File temporary = new File(file.getPath() + TEMPORARY_SUFFIX);
+        FileOutputStream stream = new FileOutputStream(temporary);
+        DataOutputStream out = new DataOutputStream(stream);
+        try {
+            out.writeInt(MAGIC);
+            out.writeDouble(sample.latitude);
+            out.writeDouble(sample.longitude);
+            out.writeFloat(sample.accuracy);
+            out.writeBoolean(sample.hasAccuracy);
+            out.writeFloat(sample.speed);
+            out.writeLong(sample.time);
+            out.writeByte(sample.provider);
+            out.flush();
+            // on the disk before the rename, else a crash can leave an empty file
+            stream.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    // ==========================================================
+    // Read
+    // ==========================================================
+
+    /**
+     * @param sample , filled with the cached location.
+     * @return false if no location is cached, the sample is then unchanged.
+     */
+    public synchronized boolean get(LocationSample sample) {
+        load();
+        if (!hasCached) {
+            return false;
+        }
+        sample.copyFrom(cached);
+        return true;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                if (in.readInt() != MAGIC) {
+                    return;
+                }
+                cached.latitude = in.readDouble();
+                cached.longitude = in.readDouble();
+                cached.accuracy = in.readFloat();
+                cached.hasAccuracy = in.readBoolean();
+                cached.speed = in.readFloat();
+                cached.time = in.readLong();
+                cached.provider = in.readByte();
+                hasCached = true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // unreadable cache: a cold start without cached location
+            cached.clear();
+        }
+    }
+
+    /**
+     * @param now , the current time in milliseconds.
+     * @return the age in milliseconds of the cached location, -1 if no location is cached.
+     */
+    public synchronized long getAge(long now) {
+        load();
+        return hasCached ? now - cached.time : -1L;
+    }
+
+    /**
+     * @param now , the current time in milliseconds.
+     * @return the status of the cached location according the max age. A location from the
+     * future, after a change of the clock, is stale.
+     */
+    public synchronized Status getStatus(long now) {
+        load();
+        if (!hasCached) {
+            return Status.EMPTY;
+        }
+        long age = now - cached.time;
+        return age >= 0 && age <= maxAge ? Status.FRESH : Status.STALE;
+    }
+
+    /**
+     * Forget the cached location and delete the file, waiting for a running write.
+     */
+    public void clear() {
+        synchronized (writeLock) {
+            synchronized (this) {
+                cached.clear();
+                hasCached = false;
+                loaded = true;
+                dirty = false;
+            }
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.mindandgo.locationdroid;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and histograms of the location pipeline.
+ *
+ * The counters are preallocated atomic arrays: recording never allocates and never locks, and a
+ * {@link #snapshot()} can be taken from any thread to export them. The histograms use
+ * power of two buckets, see {@link LocationMetricsSnapshot#getBucketUpperBound(int)}.
+ */
+public final class LocationCounters implements LocationMetrics {
+
+    // ==========================================================
+    // Constants
+    // ==========================================================
+    static final int PROVIDER_SLOTS = LocationSample.PROVIDER_COUNT + 1;
+    static final int BUCKET_COUNT = 32;
+
+    // the fixes per provider and decision, the unknown provider last
+    private final AtomicLongArray fixes = new AtomicLongArray(PROVIDER_SLOTS * LocationSelector.DECISION_COUNT);
+    private final AtomicLong comparatorUndecided = new AtomicLong();
+    // callback duration in microseconds, fix age in milliseconds
+    private final AtomicLongArray callbackDurations = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLongArray fixAges = new AtomicLongArray(BUCKET_COUNT);
+
+    @Override
+    public void onFix(int provider, int decision) {
+        if (decision < 0 || decision >= LocationSelector.DECISION_COUNT) {
+            return;
+        }
+        fixes.incrementAndGet(slot(provider) * LocationSelector.DECISION_COUNT + decision);
+    }
+
+    @Override
+    public void onComparatorUndecided() {
+        comparatorUndecided.incrementAndGet();
+    }
+
+    @Override
+    public void onDelivery(long fixAge, long callbackDuration) {
+        fixAges.incrementAndGet(bucket(fixAge));
+        callbackDurations.incrementAndGet(bucket(callbackDuration / 1000));
+    }
+
+    static int slot(int provider) {
+        return provider >= 0 && provider < LocationSample.PROVIDER_COUNT ? provider : LocationSample.PROVIDER_COUNT;
+    }
+
+    /**
+     * @return the bucket of a value: 0 for 0, then i for the values from 2^(i-1) to 2^i - 1.
+     */
+    static int bucket(long value) {
+        if (value <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * @return a copy of the counters. Each counter is read atomically, but not the whole set.
+     */
+    public LocationMetricsSnapshot snapshot() {
+        long[] fixes = new long[this.fixes.length()];
+        for (int i = 0; i < fixes.length; i++) {
+            fixes[i] = this.fixes.get(i);
+        }
+        long[] callbackDurations = new long[BUCKET_COUNT];
+        long[] fixAges = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            callbackDurations[i] = this.callbackDurations.get(i);
+            fixAges[i] = this.fixAges.get(i);
+        }
+        return new LocationMetricsSnapshot(fixes, comparatorUndecided.get(), callbackDurations, fixAges);
+    }
+
+    /**
+     * Reset all the counters to 0.
+     */
+    public void clear() {
+        for (int i = 0; i < fixes.length(); i++) {
+            fixes.set(i, 0);
+        }
+        comparatorUndecided.set(0);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            callbackDurations.set(i, 0);
+            fixAges.set(i, 0);
+        }
+    }
+}
@@ -6,10 +6,17 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.RequiresPermission;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 
 /**
@@ -18,24 +25,102 @@ import java.util.List;
 public abstract class LocationDroid implements LocationListener {
 
     private final LocationManager locationManager;
-    private Location currentLocation = null;
-    private float distanceBetweenUpdates;
-    private float maxTimeBetweenUpdates;
+    private final LocationSelector selector;
+    private final LocationPipeline pipeline;
+    private final LocationSample sample = new LocationSample();
+    // used by start() only, before the providers are registered
+    private final LocationSample lastKnownSample = new LocationSample();
+    private final LocationSample firstSample = new LocationSample();
+    private final LocationSample secondSample = new LocationSample();
+    // written by the thread receiving the location updates, readable from any thread
+    private volatile Location currentLocation = null;
+    private volatile boolean started = false;
     private boolean usingGps = true;
     private boolean usingNetwork = true;
     private boolean usingPassive = true;
+    private LocationBatch batch = null;
+    private UpdateScheduler scheduler = null;
+    private boolean usingBackgroundThread = false;
+    private HandlerThread updatesThread = null;
+    private Looper updatesLooper = null;
+    private Executor callbackExecutor = null;
+    private TrackRecorder trackRecorder = null;
+    private Odometer odometer = null;
+    private LocationPredictor predictor = null;
+    private LocationCache locationCache = null;
+    private volatile boolean currentLocationCached = false;
+    private TrackStore trackStore = null;
+    private TrackEncoder trackEncoder = null;
+    private GeofenceEngine geofenceEngine = null;
+    private long registeredInterval = 0;
+    private LocationMetrics metrics = LocationMetrics.NONE;
+
+    // Bitset of the enabled providers, indexed by the LocationSample provider ids
+    private final Object providersLock = new Object();
+    private volatile int enabledProviders = 0;
+    private volatile boolean providersKnown = false;
+    private long providersRefreshTime = 0;
+    private long providersRefreshInterval = 0;
+
+    // Registered with the LocationManager to keep the provider cache up to date before
+    // forwarding the calls to the LocationListener methods of this class
+    private final LocationListener listener = new LocationListener() {
+        @Override
+        public void onLocationChanged(Location location) {
+            LocationDroid.this.onLocationChanged(location);
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle bundle) {
+            refreshProvider(provider);
+            LocationDroid.this.onStatusChanged(provider, status, bundle);
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+            setProviderEnabled(providerId(provider), true);
+            LocationDroid.this.onProviderEnabled(provider);
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+            setProviderEnabled(providerId(provider), false);
+            LocationDroid.this.onProviderDisabled(provider);
+        }
+    };
+    private long batchMaxAge = 0;
+    // handler of the thread receiving the location updates, created again for each start
+    private volatile Handler updatesHandler = null;
+    private final Runnable batchFlush = new Runnable() {
+        @Override
+        public void run() {
+            deliverBatch();
+        }
+    };
+    // resumes the suspended providers even if the other providers give no fix
+    private final Runnable providerHealthCheck = new Runnable() {
+        @Override
+        public void run() {
+            long now = System.currentTimeMillis();
+            if (pipeline.updateProviderHealth(now)) {
+                changeRegistration(now);
+            }
+        }
+    };
 
     // ==========================================================
     // Error messages
     // ==========================================================
-    private static final String PRECISION_ERROR = "Distance between updates cannot be lower than 1 meter";
-    private static final String MAX_TIME_ERROR = "Default max time between updates cannot be lower than 1 second";
+    private static final String BATCH_SIZE_ERROR = "Batch size cannot be lower than 0";
+    private static final String BATCH_AGE_ERROR = "Batch max age cannot be lower than 0";
 
     // ==========================================================
     // Constants
     // ==========================================================
-    private static final float DEFAULT_PRECISION = 10f;
-    private static final float DEFAULT_MAX_TIME = 30f;
+    private static final String THREAD_NAME = "LocationDroid";
+    private static final int ALL_PROVIDERS = (1 << LocationSample.PROVIDER_COUNT) - 1;
+    // unavailableProviders() result for each bitset of the enabled providers
+    private static final List<List<String>> UNAVAILABLE_PROVIDERS = buildUnavailableProviders();
 
     // ==========================================================
     // Constructors
@@ -46,7 +131,7 @@ public abstract class LocationDroid implements LocationListener {
      */
     @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
     public LocationDroid(Context context) throws SecurityException {
-        this(context, DEFAULT_PRECISION);
+        this(context, LocationSelector.DEFAULT_PRECISION);
     }
 
     /**
@@ -59,7 +144,7 @@ public abstract class LocationDroid implements LocationListener {
      */
     @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
     public LocationDroid(Context context, float distanceBetweenUpdates) throws SecurityException{
-        this(context, distanceBetweenUpdates, DEFAULT_MAX_TIME);
+        this(context, distanceBetweenUpdates, LocationSelector.DEFAULT_MAX_TIME);
     }
 
     /**
@@ -78,8 +163,8 @@ public abstract class LocationDroid implements LocationListener {
     @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
     public LocationDroid(Context context, float distanceBetweenUpdates, float maxTimeBetweenUpdates) throws SecurityException{
         this.locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
-        this.distanceBetweenUpdates = distanceBetweenUpdates;
-        this.maxTimeBetweenUpdates = maxTimeBetweenUpdates;
+        this.selector = new LocationSelector(distanceBetweenUpdates, maxTimeBetweenUpdates);
+        this.pipeline = new LocationPipeline(selector);
     }
 
     // ==========================================================
@@ -114,58 +199,19 @@ public abstract class LocationDroid implements LocationListener {
             }
         }
         this.currentLocation = location;
+        selector.setCurrent(location == null ? null : toSample(location, lastKnownSample));
     }
 
     private Location accuracyAndTimeComparator(Location location1, Location location2) {
-        Location bestTime = null;
-        Location bestAccuracy = null;
-
-        // if location times are different, get the newest location
-        if (location1.getTime() != location2.getTime()) {
-            bestTime = timeComparator(location1, location2);
-        }
-        // if the accuracies are different, get the best accuracy
-        if (location1.hasAccuracy() && location2.hasAccuracy() &&
-                location1.getAccuracy() != location2.getAccuracy()) {
-            bestAccuracy = accuracyComparator(location1, location2);
-        }
-        // if only location1 has an accuracy
-        else if(location1.hasAccuracy() && !location2.hasAccuracy()){
-            bestAccuracy = location1;
-        }
-        // if only location2 has an accuracy
-        else if(!location1.hasAccuracy() && location2.hasAccuracy()) {
-            bestAccuracy = location2;
-        }
-
-        // if the location with the best accuracy is also the location with the best time,
-        // this location is the best location of the both
-        if(bestAccuracy == bestTime){
-            return bestAccuracy;
-        }else if(bestAccuracy == null){
-            return bestTime;
-        }else if(bestTime == null){
-            return bestAccuracy;
-        }
-        // In all other cases it's not possible to determine which one is the best, return null
-        else{
-            return null;
-        }
-    }
-
-    private Location accuracyComparator(Location location1, Location location2) {
-        if (location1.getAccuracy() < location2.getAccuracy()) {
+        LocationSample best = LocationSelector.accuracyAndTimeComparator(
+                toSample(location1, firstSample), toSample(location2, secondSample));
+        if (best == firstSample) {
             return location1;
-        } else {
-            return location2;
-        }
-    }
-
-    private Location timeComparator(Location location1, Location location2) {
-        if (location1.getTime() < location2.getTime()) {
+        } else if (best == secondSample) {
             return location2;
         } else {
-            return location1;
+            metrics.onComparatorUndecided();
+            return null;
         }
     }
 
@@ -180,45 +226,233 @@ public abstract class LocationDroid implements LocationListener {
      */
     @Override
     public void onLocationChanged(Location newLocation) {
+        long now = System.currentTimeMillis();
+        boolean delivered = pipeline.offer(toSample(newLocation, sample), now);
+        if (pipeline.isRegistrationChanged()) {
+            changeRegistration(now);
+        }
+        // only the accepted speeds, a rejected outlier must not change the registration
+        if (scheduler != null && started && newLocation.hasSpeed()
+                && LocationSelector.isAcceptedDecision(pipeline.getDecision())) {
+            scheduleLocationUpdates(sample);
+        }
+        if (!delivered) {
+            return;
+        }
+        if (pipeline.getDecision() == LocationSelector.ACCEPTED_FUSED) {
+            Location fusedLocation = new Location(newLocation);
+            fusedLocation.setLatitude(sample.latitude);
+            fusedLocation.setLongitude(sample.longitude);
+            fusedLocation.setAccuracy(sample.accuracy);
+            fusedLocation.setSpeed(sample.speed);
+            replaceLocation(fusedLocation, sample);
+        } else {
+            replaceLocation(newLocation, sample);
+        }
+    }
 
-        float maxTimeBetweenUpdates = getMaxTimeBetweenUpdates(newLocation);
+    /**
+     * Register again the providers after a suspension, a resume or a stationary state change.
+     */
+    private void changeRegistration(long now) {
+        if (!started) {
+            return;
+        }
+        reregisterLocationUpdates(registeredInterval);
+        ProviderHealth providerHealth = pipeline.getProviderHealth();
+        if (providerHealth == null) {
+            return;
+        }
+        // check again at the end of the next backoff, even if no fix comes
+        long resumeTime = providerHealth.getNextResumeTime();
+        Handler handler = updatesHandler();
+        handler.removeCallbacks(providerHealthCheck);
+        if (resumeTime >= 0) {
+            handler.postDelayed(providerHealthCheck, Math.max(0L, resumeTime - now));
+        }
+    }
+
+    private void scheduleLocationUpdates(LocationSample accepted) {
+        long interval = scheduler.update(selector, accepted.speed, accepted.time);
+        if (interval != UpdateScheduler.NO_CHANGE) {
+            reregisterLocationUpdates(interval);
+        }
+    }
 
-        if (currentLocation != null) {
-            // if the newLocation accuracy is better than the current location accuracy
-            if (newLocation.getAccuracy() <= currentLocation.getAccuracy()) {
-                replaceLocation(newLocation);
+    private void reregisterLocationUpdates(long interval) {
+        try {
+            removeLocationUpdates();
+            requestLocationUpdates(interval);
+        } catch (SecurityException e) {
+            // the permission has been revoked, keep the current registration
+        }
+    }
+
+    private void replaceLocation(Location newLocation, LocationSample newSample) {
+        this.currentLocation = newLocation;
+        this.currentLocationCached = false;
+        if (trackRecorder != null) {
+            trackRecorder.append(newSample);
+        }
+        if (odometer != null) {
+            odometer.update(newSample);
+        }
+        if (predictor != null) {
+            predictor.update(newSample, System.nanoTime());
+        }
+        if (locationCache != null) {
+            locationCache.put(newSample, System.currentTimeMillis());
+        }
+        if (trackStore != null || trackEncoder != null) {
+            writeLocation(newSample);
+        }
+        if (geofenceEngine != null) {
+            geofenceEngine.evaluate(newSample);
+        }
+        if (batch != null) {
+            batchLocation(newSample);
+        } else if (callbackExecutor != null) {
+            dispatchLocation(newLocation);
+        } else {
+            deliverLocation(newLocation);
+        }
+    }
+
+    private void dispatchLocation(final Location newLocation) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deliverLocation(newLocation);
             }
-            // if the time difference between the both location is bigger than
-            // maxTimeBetweenUpdates
-            else if (newLocation.getTime() - this.currentLocation.getTime() > maxTimeBetweenUpdates) {
-                replaceLocation(newLocation);
+        });
+    }
+
+    private void deliverLocation(Location newLocation) {
+        if (metrics == LocationMetrics.NONE) {
+            onNewLocation(newLocation);
+            return;
+        }
+        long start = System.nanoTime();
+        onNewLocation(newLocation);
+        long duration = System.nanoTime() - start;
+        metrics.onDelivery(System.currentTimeMillis() - newLocation.getTime(), duration);
+    }
+
+    private void writeLocation(LocationSample newSample) {
+        try {
+            if (trackStore != null) {
+                trackStore.append(newSample);
+            }
+            if (trackEncoder != null) {
+                trackEncoder.write(newSample);
             }
+        } catch (IOException e) {
+            onTrackWriteError(e);
+        }
+    }
+
+    private void batchLocation(LocationSample newSample) {
+        boolean first = batch.isEmpty();
+        if (batch.add(newSample)) {
+            deliverBatch();
+        } else if (first && batchMaxAge > 0) {
+            // the batch age is checked on the thread receiving the location updates
+            updatesHandler().postDelayed(batchFlush, batchMaxAge);
+        }
+    }
+
+    /**
+     * Must be called on the thread receiving the location updates.
+     *
+     * @return the handler of the thread receiving the location updates.
+     */
+    private Handler updatesHandler() {
+        Handler handler = updatesHandler;
+        if (handler == null) {
+            handler = updatesLooper != null ? new Handler(updatesLooper) : new Handler();
+            updatesHandler = handler;
+        }
+        return handler;
+    }
+
+    /**
+     * Deliver the batched locations through {@link #onNewLocations(LocationBatch)}, right now if
+     * called on the thread receiving the location updates, else posted to that thread.
+     * Does nothing if the batching is disabled or if no location is waiting.
+     */
+    public void flush() {
+        Handler handler = updatesHandler;
+        if (handler != null && handler.getLooper() != Looper.myLooper()) {
+            handler.post(batchFlush);
         } else {
-            replaceLocation(newLocation);
+            deliverBatch();
         }
     }
 
-    private void replaceLocation(Location newLocation) {
-        this.currentLocation = newLocation;
-        onNewLocation(newLocation);
+    private void deliverBatch() {
+        Handler handler = updatesHandler;
+        if (handler != null) {
+            handler.removeCallbacks(batchFlush);
+        }
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            onNewLocations(batch);
+        } finally {
+            if (metrics != LocationMetrics.NONE) {
+                long duration = System.nanoTime() - start;
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < batch.size(); i++) {
+                    metrics.onDelivery(now - batch.getTime(i), duration);
+                }
+            }
+            batch.clear();
+        }
     }
 
-    private float getMaxTimeBetweenUpdates(Location newLocation) {
-        // The maximum time between location update is calculated according the 'distanceBetweenUpdates'
-        // and the speed given by the last location.
-        // The maxTimeBetweenUpdates is the time that the user need to do the distance set
-        // by the distanceBetweenUpdates.
-        float time = distanceBetweenUpdates / newLocation.getSpeed();
+    /**
+     * Copy the fields of a Location into a reusable LocationSample.
+     *
+     * @param location , the location to read.
+     * @param sample , the sample to fill.
+     * @return the filled sample.
+     */
+    static LocationSample toSample(Location location, LocationSample sample) {
+        return sample.set(location.getLatitude(), location.getLongitude(), location.getAccuracy(),
+                location.hasAccuracy(), location.getSpeed(), location.getTime(),
+                providerId(location.getProvider()));
+    }
 
-        // Default value for maxTimeBetweenUpdates
-        float maxTimeBetweenUpdates = this.maxTimeBetweenUpdates;
+    /**
+     * @param provider , a LocationSample provider id.
+     * @return the matching LocationManager provider name.
+     */
+    static String providerName(int provider) {
+        switch (provider) {
+            case LocationSample.PROVIDER_GPS:
+                return LocationManager.GPS_PROVIDER;
+            case LocationSample.PROVIDER_NETWORK:
+                return LocationManager.NETWORK_PROVIDER;
+            default:
+                return LocationManager.PASSIVE_PROVIDER;
+        }
+    }
 
-        // if the calculated maxTimeBetweenUpdates is lower than the default value and not
-        // equal to zero, the calculated value is the new maxTimeBetweenUpdates
-        if (time < maxTimeBetweenUpdates && time != 0) {
-            maxTimeBetweenUpdates = time;
+    /**
+     * @param provider , a LocationManager provider name.
+     * @return the matching LocationSample provider id.
+     */
+    static int providerId(String provider) {
+        if (LocationManager.GPS_PROVIDER.equals(provider)) {
+            return LocationSample.PROVIDER_GPS;
+        } else if (LocationManager.NETWORK_PROVIDER.equals(provider)) {
+            return LocationSample.PROVIDER_NETWORK;
+        } else if (LocationManager.PASSIVE_PROVIDER.equals(provider)) {
+            return LocationSample.PROVIDER_PASSIVE;
         }
-        return maxTimeBetweenUpdates;
+        return LocationSample.PROVIDER_UNKNOWN;
     }
 
     /**
@@ -228,6 +462,25 @@ public abstract class LocationDroid implements LocationListener {
      */
     public abstract void onNewLocation(Location currentLocation);
 
+    /**
+     * Call back used instead of {@link #onNewLocation(Location)} when the batching is enabled,
+     * see {@link #setBatching(int, long)}.
+     *
+     * @param locations , the locations accepted since the last delivery, oldest first. The batch
+     *                  is reused, it must not be kept after the call.
+     */
+    public void onNewLocations(LocationBatch locations) {
+    }
+
+    /**
+     * Called when an accepted location cannot be written in the track store or the track encoder,
+     * see {@link #setTrackStore(TrackStore)} and {@link #setTrackEncoder(TrackEncoder)}.
+     *
+     * @param e , the write error.
+     */
+    public void onTrackWriteError(IOException e) {
+    }
+
     // ==========================================================
     // Start / Stop location updates
     // ==========================================================
@@ -238,30 +491,162 @@ public abstract class LocationDroid implements LocationListener {
      *
      */
     public Location start() throws SecurityException{
+        pipeline.reset();
+        if (predictor != null) {
+            predictor.reset();
+        }
+        refreshProviders();
+        long interval = (long) (selector.getMaxTimeBetweenUpdates() * 1000);
+        if (scheduler != null) {
+            scheduler.reset(interval);
+        }
+        if (!usingBackgroundThread) {
+            // created at the first need by the thread receiving the updates: this one
+            updatesHandler = null;
+        } else if (updatesThread == null) {
+            updatesThread = new HandlerThread(THREAD_NAME);
+            updatesThread.start();
+            updatesLooper = updatesThread.getLooper();
+            updatesHandler = new Handler(updatesLooper);
+        }
+        // before the registration: no fix can be accepted meanwhile on the updates thread
+        getLastBestKnownLocation();
+        if (locationCache != null) {
+            warmStart();
+        }
+        requestLocationUpdates(interval);
+        started = true;
+        return currentLocation;
+    }
+
+    /**
+     * Use the cached location if it is fresh and newer than the last known locations.
+     */
+    private void warmStart() {
+        currentLocationCached = false;
+        LocationSample cached = lastKnownSample;
+        if (locationCache.getStatus(System.currentTimeMillis()) != LocationCache.Status.FRESH
+                || !locationCache.get(cached)) {
+            return;
+        }
+        Location lastKnownLocation = currentLocation;
+        if (lastKnownLocation != null && lastKnownLocation.getTime() >= cached.time) {
+            return;
+        }
+        Location cachedLocation = new Location(providerName(cached.provider));
+        cachedLocation.setLatitude(cached.latitude);
+        cachedLocation.setLongitude(cached.longitude);
+        if (cached.hasAccuracy) {
+            cachedLocation.setAccuracy(cached.accuracy);
+        }
+        cachedLocation.setSpeed(cached.speed);
+        cachedLocation.setTime(cached.time);
+        selector.setCurrent(cached);
+        currentLocation = cachedLocation;
+        currentLocationCached = true;
+    }
+
+    private void flushLocationCache() {
+        if (locationCache == null) {
+            return;
+        }
+        locationCache.flush();
+    }
+
+    /**
+     * Register again the providers with the current distance and max time between updates.
+     * Does nothing if the location service is not started.
+     */
+    void refreshLocationUpdates() throws SecurityException {
+        if (!started) {
+            return;
+        }
+        long interval = (long) (selector.getMaxTimeBetweenUpdates() * 1000);
+        if (scheduler != null) {
+            scheduler.reset(interval);
+        }
+        removeLocationUpdates();
+        requestLocationUpdates(interval);
+    }
+
+    private void requestLocationUpdates(long interval) throws SecurityException {
+        registeredInterval = interval;
+        if (pipeline.isStationary()) {
+            // a movement is detected from the fixes requested by the other applications
+            if (isPassiveServiceOn()) {
+                requestLocationUpdates(LocationManager.PASSIVE_PROVIDER, interval);
+            }
+            return;
+        }
         if (usingGps) {
             if (isGpsServiceOn()) {
-                locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, (long) maxTimeBetweenUpdates, distanceBetweenUpdates, this);
+                requestLocationUpdates(LocationManager.GPS_PROVIDER, interval);
             }
         }
         if (usingNetwork) {
             if (isNetworkServiceOn()) {
-                locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, (long) maxTimeBetweenUpdates, distanceBetweenUpdates, this);
+                requestLocationUpdates(LocationManager.NETWORK_PROVIDER, interval);
             }
         }
         if (usingPassive) {
             if (isPassiveServiceOn()) {
-                locationManager.requestLocationUpdates(LocationManager.PASSIVE_PROVIDER, (long) maxTimeBetweenUpdates, distanceBetweenUpdates, this);
+                requestLocationUpdates(LocationManager.PASSIVE_PROVIDER, interval);
+            }
+        }
+    }
+
+    private void requestLocationUpdates(String provider, long interval) throws SecurityException {
+        ProviderHealth providerHealth = pipeline.getProviderHealth();
+        if (providerHealth != null) {
+            int id = providerId(provider);
+            if (providerHealth.isSuspended(id)) {
+                return;
+            }
+            providerHealth.onRegistered(id, System.currentTimeMillis());
+        }
+        if (updatesLooper != null) {
+            locationManager.requestLocationUpdates(provider, interval, selector.getDistanceBetweenUpdates(), listener, updatesLooper);
+        } else {
+            locationManager.requestLocationUpdates(provider, interval, selector.getDistanceBetweenUpdates(), listener);
+        }
+    }
+
+    private void removeLocationUpdates() throws SecurityException {
+        locationManager.removeUpdates(listener);
+        ProviderHealth providerHealth = pipeline.getProviderHealth();
+        if (providerHealth != null) {
+            long now = System.currentTimeMillis();
+            for (int provider = 0; provider < LocationSample.PROVIDER_COUNT; provider++) {
+                providerHealth.onUnregistered(provider, now);
             }
         }
-        getLastBestKnownLocation();
-        return currentLocation;
     }
 
     /**
      * Stop the location service
      */
     public void stop() throws SecurityException {
-        locationManager.removeUpdates(this);
+        started = false;
+        removeLocationUpdates();
+        if (updatesThread != null) {
+            // flush and quit on the updates thread, after the updates already queued
+            final Looper looper = updatesLooper;
+            Handler handler = updatesHandler;
+            updatesThread = null;
+            updatesLooper = null;
+            updatesHandler = null;
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliverBatch();
+                    flushLocationCache();
+                    looper.quit();
+                }
+            });
+        } else {
+            deliverBatch();
+            flushLocationCache();
+        }
     }
 
     // ==========================================================
@@ -294,63 +679,151 @@ public abstract class LocationDroid implements LocationListener {
     // ==========================================================
 
     private boolean isGpsServiceOn() {
-        return locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER);
+        return (enabledProviders() & (1 << LocationSample.PROVIDER_GPS)) != 0;
     }
 
     private boolean isNetworkServiceOn() {
-        return locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER);
+        return (enabledProviders() & (1 << LocationSample.PROVIDER_NETWORK)) != 0;
     }
 
     private boolean isPassiveServiceOn() {
-        return locationManager.isProviderEnabled(LocationManager.PASSIVE_PROVIDER);
+        return (enabledProviders() & (1 << LocationSample.PROVIDER_PASSIVE)) != 0;
+    }
+
+    private int enabledProviders() {
+        if (!providersKnown || (providersRefreshInterval > 0
+                && SystemClock.elapsedRealtime() - providersRefreshTime >= providersRefreshInterval)) {
+            refreshProviders();
+        }
+        return enabledProviders;
     }
 
     /**
-     *
-     * @return The list of unavailable providers
+     * Ask the LocationManager for the state of all the providers.
      */
-    public List<String> unavailableProviders(){
-        List<String> unavailable = new ArrayList<>();
-        if(!isGpsServiceOn()){
-            unavailable.add(LocationManager.GPS_PROVIDER);
+    private void refreshProviders() {
+        int enabled = 0;
+        if (locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)) {
+            enabled |= 1 << LocationSample.PROVIDER_GPS;
+        }
+        if (locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
+            enabled |= 1 << LocationSample.PROVIDER_NETWORK;
         }
-        if(!isNetworkServiceOn()){
-            unavailable.add(LocationManager.NETWORK_PROVIDER);
+        if (locationManager.isProviderEnabled(LocationManager.PASSIVE_PROVIDER)) {
+            enabled |= 1 << LocationSample.PROVIDER_PASSIVE;
         }
-        if(!isPassiveServiceOn()){
-            unavailable.add(LocationManager.PASSIVE_PROVIDER);
+        synchronized (providersLock) {
+            enabledProviders = enabled;
+            providersKnown = true;
+            if (providersRefreshInterval > 0) {
+                providersRefreshTime = SystemClock.elapsedRealtime();
+            }
+        }
+    }
+
+    private void refreshProvider(String provider) {
+        int id = providerId(provider);
+        if (id != LocationSample.PROVIDER_UNKNOWN) {
+            setProviderEnabled(id, locationManager.isProviderEnabled(provider));
         }
-        return unavailable;
     }
+
+    private void setProviderEnabled(int id, boolean enabled) {
+        if (id == LocationSample.PROVIDER_UNKNOWN) {
+            return;
+        }
+        synchronized (providersLock) {
+            if (enabled) {
+                enabledProviders |= 1 << id;
+            } else {
+                enabledProviders &= ~(1 << id);
+            }
+        }
+    }
+
+    /**
+     * The provider state is cached and updated by the provider callbacks.
+     *
+     * @return The list of unavailable providers, this list cannot be modified.
+     */
+    public List<String> unavailableProviders(){
+        return UNAVAILABLE_PROVIDERS.get(~enabledProviders() & ALL_PROVIDERS);
+    }
+
+    private static List<List<String>> buildUnavailableProviders() {
+        List<List<String>> lists = new ArrayList<>();
+        for (int unavailableBits = 0; unavailableBits <= ALL_PROVIDERS; unavailableBits++) {
+            List<String> unavailable = new ArrayList<>();
+            if ((unavailableBits & (1 << LocationSample.PROVIDER_GPS)) != 0) {
+                unavailable.add(LocationManager.GPS_PROVIDER);
+            }
+            if ((unavailableBits & (1 << LocationSample.PROVIDER_NETWORK)) != 0) {
+                unavailable.add(LocationManager.NETWORK_PROVIDER);
+            }
+            if ((unavailableBits & (1 << LocationSample.PROVIDER_PASSIVE)) != 0) {
+                unavailable.add(LocationManager.PASSIVE_PROVIDER);
+            }
+            lists.add(Collections.unmodifiableList(unavailable));
+        }
+        return Collections.unmodifiableList(lists);
+    }
+
     // ==========================================================
     // Getters
     // ==========================================================
+
+    /**
+     * @return true if the location service is started.
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * @return the provider health statistics, null if not enabled,
+     * see {@link #setUsingProviderHealth(boolean)}. Read it on the thread receiving the updates.
+     */
+    public ProviderHealth getProviderHealth() {
+        return pipeline.getProviderHealth();
+    }
+
+    /**
+     * Can be called from any thread.
+     *
+     * @return the current best location. Could return null.
+     */
+    public Location getCurrentLocation() {
+        return currentLocation;
+    }
+
+    /**
+     * Can be called from any thread.
+     *
+     * @return true if the current location comes from the location cache, no fix has been
+     * accepted since the start. See {@link #setLocationCache(LocationCache)}.
+     */
+    public boolean isCurrentLocationCached() {
+        return currentLocationCached;
+    }
+
     public float getDistanceBetweenUpdates() {
-        return distanceBetweenUpdates;
+        return selector.getDistanceBetweenUpdates();
     }
 
     public float getMaxTimeBetweenUpdates() {
-        return maxTimeBetweenUpdates;
+        return selector.getMaxTimeBetweenUpdates();
     }
 
     // ==========================================================
     // Setters -- Options
     // ==========================================================
     public LocationDroid setDistanceBetweenUpdates(float distanceBetweenUpdates) {
-        if (distanceBetweenUpdates <= 0) {
-            throw new IllegalArgumentException(PRECISION_ERROR);
-        } else {
-            this.distanceBetweenUpdates = distanceBetweenUpdates;
-        }
+        selector.setDistanceBetweenUpdates(distanceBetweenUpdates);
         return this;
     }
 
     public LocationDroid setMaxTimeBetweenUpdates(float maxTimeBetweenUpdates) {
-        if (distanceBetweenUpdates <= 0) {
-            throw new IllegalArgumentException(MAX_TIME_ERROR);
-        } else {
-            this.maxTimeBetweenUpdates = maxTimeBetweenUpdates;
-        }
+        selector.setMaxTimeBetweenUpdates(maxTimeBetweenUpdates);
         return this;
     }
 
@@ -368,5 +841,221 @@ public abstract class LocationDroid implements LocationListener {
         this.usingPassive = usingPassive;
         return this;
     }
+
+    /**
+     * Deliver the locations by batches through {@link #onNewLocations(LocationBatch)} instead of
+     * one by one through {@link #onNewLocation(Location)}. A batch is delivered when it is full,
+     * when its oldest location reaches the max age, on {@link #flush()} and on {@link #stop()}.
+     * Call it before {@link #start()} or on the thread receiving the location updates.
+     *
+     * @param batchSize , the maximum number of locations of a batch, 0 to disable the batching.
+     *                  Default = 0.
+     * @param batchMaxAge , the maximum time in milliseconds a location waits in the batch,
+     *                    0 to only deliver full batches.
+     */
+    public LocationDroid setBatching(int batchSize, long batchMaxAge) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException(BATCH_SIZE_ERROR);
+        }
+        if (batchMaxAge < 0) {
+            throw new IllegalArgumentException(BATCH_AGE_ERROR);
+        }
+        deliverBatch();
+        this.batch = batchSize == 0 ? null : new LocationBatch(batchSize);
+        this.batchMaxAge = batchMaxAge;
+        return this;
+    }
+
+    /**
+     * Receive the location updates on a dedicated background thread instead of the thread calling
+     * {@link #start()}. Must be set before {@link #start()}.
+     *
+     * @param usingBackgroundThread , true to use a background thread. Default = false.
+     */
+    public LocationDroid setUsingBackgroundThread(boolean usingBackgroundThread) {
+        this.usingBackgroundThread = usingBackgroundThread;
+        return this;
+    }
+
+    /**
+     * Call {@link #onNewLocation(Location)} on the given executor instead of the thread receiving
+     * the location updates. Batches are still delivered on the thread receiving the updates.
+     *
+     * @param callbackExecutor , the executor, null to call onNewLocation directly. Default = null.
+     */
+    public LocationDroid setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        return this;
+    }
+
+    /**
+     * Keep the last accepted location in a file. When the system has no fresher last known
+     * location, {@link #start()} returns the cached location if it is not stale.
+     *
+     * @param locationCache , the cache, null to not use a cache. Default = null.
+     */
+    public LocationDroid setLocationCache(LocationCache locationCache) {
+        this.locationCache = locationCache;
+        return this;
+    }
+
+    /**
+     * Measure the distance, moving time and speeds of the accepted locations.
+     *
+     * @param odometer , the odometer, readable from any thread, null to stop measuring. Default = null.
+     */
+    public LocationDroid setOdometer(Odometer odometer) {
+        this.odometer = odometer;
+        return this;
+    }
+
+    /**
+     * Predict the position between the accepted locations, for a map rendered at a higher rate
+     * than the fixes. The predictor is reset at {@link #start()}.
+     *
+     * @param predictor , the predictor, queried from any thread with System.nanoTime(), null to
+     *                  stop predicting. Default = null.
+     */
+    public LocationDroid setPredictor(LocationPredictor predictor) {
+        this.predictor = predictor;
+        return this;
+    }
+
+    /**
+     * Record every accepted location in the given recorder.
+     *
+     * @param trackRecorder , the recorder, null to stop recording. Default = null.
+     */
+    public LocationDroid setTrackRecorder(TrackRecorder trackRecorder) {
+        this.trackRecorder = trackRecorder;
+        return this;
+    }
+
+    /**
+     * Persist every accepted location in the given store. The store is not closed by
+     * {@link #stop()}.
+     *
+     * @param trackStore , the store, null to stop persisting. Default = null.
+     */
+    public LocationDroid setTrackStore(TrackStore trackStore) {
+        this.trackStore = trackStore;
+        return this;
+    }
+
+    /**
+     * Encode every accepted location with the given encoder. The encoder is not flushed nor
+     * closed by {@link #stop()}.
+     *
+     * @param trackEncoder , the encoder, null to stop encoding. Default = null.
+     */
+    public LocationDroid setTrackEncoder(TrackEncoder trackEncoder) {
+        this.trackEncoder = trackEncoder;
+        return this;
+    }
+
+    /**
+     * Evaluate every accepted location against the geofences of the given engine.
+     *
+     * @param geofenceEngine , the engine, null to stop the evaluation. Default = null.
+     */
+    public LocationDroid setGeofenceEngine(GeofenceEngine geofenceEngine) {
+        this.geofenceEngine = geofenceEngine;
+        return this;
+    }
+
+    /**
+     * The state of the providers is cached and updated by the provider callbacks. With a refresh
+     * interval the state is also read again from the LocationManager when it is older.
+     *
+     * @param providersRefreshInterval , the refresh interval in milliseconds, 0 to only rely on
+     *                                 the provider callbacks. Default = 0.
+     */
+    public LocationDroid setProvidersRefreshInterval(long providersRefreshInterval) {
+        this.providersRefreshInterval = providersRefreshInterval;
+        return this;
+    }
+
+    /**
+     * Reject the fixes implying an impossible speed or acceleration before they replace the
+     * current location, like the network fixes jumping kilometers away.
+     *
+     * @param plausibilityFilter , the filter, null to accept every fix selected. Default = null.
+     */
+    public LocationDroid setPlausibilityFilter(PlausibilityFilter plausibilityFilter) {
+        pipeline.setPlausibilityFilter(plausibilityFilter);
+        return this;
+    }
+
+    /**
+     * Detect when the device stays at the same place. Once stationary, only the passive provider
+     * is registered, even if not used, and the fixes at the same place are not delivered. The
+     * providers are registered again at the first fix moving away.
+     *
+     * @param stationaryDetector , the detector, null to keep the providers registered. Default = null.
+     */
+    public LocationDroid setStationaryDetector(StationaryDetector stationaryDetector) {
+        pipeline.setStationaryDetector(stationaryDetector);
+        return this;
+    }
+
+    /**
+     * Instrument the location pipeline: the fixes received and the decision taken for each of
+     * them, the callback durations and the age of the locations at delivery.
+     *
+     * @param metrics , the metrics, a {@link LocationCounters} for instance, null to disable them.
+     *                Default = disabled.
+     */
+    public LocationDroid setMetrics(LocationMetrics metrics) {
+        this.metrics = metrics == null ? LocationMetrics.NONE : metrics;
+        pipeline.setMetrics(this.metrics);
+        return this;
+    }
+
+    /**
+     * Record the health of each provider and suspend the providers whose fixes are almost never
+     * selected, or never fused, probing them again after a growing backoff.
+     *
+     * @param usingProviderHealth , true to enable the provider health. Default = false.
+     */
+    public LocationDroid setUsingProviderHealth(boolean usingProviderHealth) {
+        if (!usingProviderHealth) {
+            pipeline.setProviderHealth(null);
+        } else if (pipeline.getProviderHealth() == null) {
+            pipeline.setProviderHealth(new ProviderHealth());
+        }
+        return this;
+    }
+
+    /**
+     * Adapt the update interval of the providers to the speed: longer when slow or stationary,
+     * shorter when driving. The interval is the time needed to travel the distance between
+     * updates at the speed of the accepted locations, up to 2 minutes when stationary.
+     *
+     * @param usingAdaptiveUpdates , true to enable the adaptive interval. Default = false.
+     */
+    public LocationDroid setUsingAdaptiveUpdates(boolean usingAdaptiveUpdates) {
+        if (!usingAdaptiveUpdates) {
+            this.scheduler = null;
+        } else if (scheduler == null) {
+            this.scheduler = new UpdateScheduler();
+            scheduler.reset((long) (selector.getMaxTimeBetweenUpdates() * 1000));
+        }
+        return this;
+    }
+
+    /**
+     * Fuse the fixes of all the providers with a Kalman filter instead of selecting the best one.
+     * Every fix then gives a new smoothed location, weighted by the accuracy of the fixes.
+     *
+     * @param usingFusion , true to enable the fusion. Default = false.
+     */
+    public LocationDroid setUsingFusion(boolean usingFusion) {
+        if (!usingFusion) {
+            pipeline.setFusionFilter(null);
+        } else if (pipeline.getFusionFilter() == null) {
+            pipeline.setFusionFilter(new LocationKalmanFilter());
+        }
+        return this;
+    }
 }
 
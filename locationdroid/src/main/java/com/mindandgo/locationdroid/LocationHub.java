@@ -0,0 +1,173 @@
+package com.mindandgo.locationdroid;
+
+import android.Manifest;
+import android.content.Context;
+import android.location.Location;
+import android.os.Bundle;
+import android.support.annotation.RequiresPermission;
+
+/**
+ * Shares a single provider registration and selection between many subscribers.
+ *
+ * Each subscriber has its own distance and max time between updates. The providers are
+ * registered with the tightest values of all the subscribers, the hub starts with the first
+ * subscriber and stops when the last one leaves.
+ */
+public class LocationHub extends LocationDroid {
+
+    private static final Subscription[] NO_SUBSCRIPTION = new Subscription[0];
+
+    // copy on write, read without lock by the thread receiving the location updates
+    private volatile Subscription[] subscriptions = NO_SUBSCRIPTION;
+
+    /**
+     *
+     * @param context , the context to be used to construct the LocationHub class.
+     */
+    @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
+    public LocationHub(Context context) throws SecurityException {
+        super(context);
+    }
+
+    // ==========================================================
+    // Subscriptions
+    // ==========================================================
+
+    /**
+     * Add a subscriber, the location service is started with the first subscriber.
+     *
+     * @param subscriber , the subscriber.
+     * @param distanceBetweenUpdates , the number of meters between two locations for this subscriber.
+     * @param maxTimeBetweenUpdates , the maximum time in seconds between two locations for this subscriber.
+     * @return the current best location. Could return null.
+     */
+    public synchronized Location subscribe(LocationSubscriber subscriber, float distanceBetweenUpdates,
+                                           float maxTimeBetweenUpdates) throws SecurityException {
+        if (distanceBetweenUpdates <= 0) {
+            throw new IllegalArgumentException(LocationSelector.PRECISION_ERROR);
+        }
+        if (maxTimeBetweenUpdates <= 0) {
+            throw new IllegalArgumentException(LocationSelector.MAX_TIME_ERROR);
+        }
+        Subscription[] current = subscriptions;
+        Subscription[] updated = new Subscription[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = new Subscription(subscriber, distanceBetweenUpdates, maxTimeBetweenUpdates);
+        subscriptions = updated;
+
+        applyRequirements(updated);
+        if (!isStarted()) {
+            return start();
+        }
+        refreshLocationUpdates();
+        return getCurrentLocation();
+    }
+
+    /**
+     * Remove a subscriber, the location service is stopped with the last subscriber.
+     *
+     * @param subscriber , the subscriber.
+     */
+    public synchronized void unsubscribe(LocationSubscriber subscriber) throws SecurityException {
+        Subscription[] current = subscriptions;
+        int index = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].subscriber == subscriber) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return;
+        }
+        if (current.length == 1) {
+            subscriptions = NO_SUBSCRIPTION;
+            stop();
+            return;
+        }
+        Subscription[] updated = new Subscription[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, updated.length - index);
+        subscriptions = updated;
+
+        applyRequirements(updated);
+        refreshLocationUpdates();
+    }
+
+    /**
+     * @return the number of subscribers.
+     */
+    public int getSubscriberCount() {
+        return subscriptions.length;
+    }
+
+    private void applyRequirements(Subscription[] subscriptions) {
+        float distanceBetweenUpdates = Float.MAX_VALUE;
+        float maxTimeBetweenUpdates = Float.MAX_VALUE;
+        for (Subscription subscription : subscriptions) {
+            distanceBetweenUpdates = Math.min(distanceBetweenUpdates, subscription.distanceBetweenUpdates);
+            maxTimeBetweenUpdates = Math.min(maxTimeBetweenUpdates, subscription.maxTimeBetweenUpdates);
+        }
+        setDistanceBetweenUpdates(distanceBetweenUpdates);
+        setMaxTimeBetweenUpdates(maxTimeBetweenUpdates);
+    }
+
+    // ==========================================================
+    // Fan out
+    // ==========================================================
+    @Override
+    public void onNewLocation(Location currentLocation) {
+        double latitude = currentLocation.getLatitude();
+        double longitude = currentLocation.getLongitude();
+        long time = currentLocation.getTime();
+        for (Subscription subscription : subscriptions) {
+            subscription.deliver(currentLocation, latitude, longitude, time);
+        }
+    }
+
+    @Override
+    public void onProviderEnabled(String s) {
+    }
+
+    @Override
+    public void onProviderDisabled(String s) {
+    }
+
+    @Override
+    public void serviceProviderStatusListener(String provider, int status, Bundle bundle) {
+    }
+
+    /**
+     * A subscriber with its own thresholds and the last location it received. The deliveries are
+     * serialized, a multi-threaded callback executor can run two of them at once.
+     */
+    private static final class Subscription {
+
+        private final LocationSubscriber subscriber;
+        private final float distanceBetweenUpdates;
+        private final float maxTimeBetweenUpdates;
+        // guarded by this
+        private boolean hasLast = false;
+        private double lastLatitude;
+        private double lastLongitude;
+        private long lastTime;
+
+        private Subscription(LocationSubscriber subscriber, float distanceBetweenUpdates, float maxTimeBetweenUpdates) {
+            this.subscriber = subscriber;
+            this.distanceBetweenUpdates = distanceBetweenUpdates;
+            this.maxTimeBetweenUpdates = maxTimeBetweenUpdates;
+        }
+
+        private synchronized void deliver(Location location, double latitude, double longitude, long time) {
+            if (hasLast && time - lastTime < maxTimeBetweenUpdates * 1000
+                    && Geodesy.equirectangular(lastLatitude, lastLongitude, latitude, longitude) < distanceBetweenUpdates) {
+                return;
+            }
+            hasLast = true;
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+            lastTime = time;
+            subscriber.onNewLocation(location);
+        }
+    }
+}
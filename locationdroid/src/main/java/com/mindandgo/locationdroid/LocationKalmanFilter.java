@@ -0,0 +1,182 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Constant velocity Kalman filter fusing fixes from every provider into a single smoothed estimate.
+ *
+ * Each fix is weighted by its accuracy. The state is kept in meters on a local plane centered on
+ * the first fix, with an independent position/velocity filter per axis, so the whole state is a
+ * handful of primitive fields and an update never allocates.
+ */
+public final class LocationKalmanFilter {
+
+    // ==========================================================
+    // Constants
+    // ==========================================================
+    static final float DEFAULT_ACCELERATION_NOISE = 3f;
+    // accuracy used for the fixes without accuracy, in meters
+    static final float DEFAULT_FIX_ACCURACY = 50f;
+    // initial uncertainty of the velocity, in meters/second
+    private static final double INITIAL_VELOCITY_ERROR = 10d;
+
+    private final double accelerationVariance;
+
+    private boolean initialized = false;
+    private double originLatitude;
+    private double originLongitude;
+    private double metersPerDegreeLongitude;
+    private long lastTime;
+    private int lastProvider;
+
+    // East axis: position, velocity and covariance [[xPP, xPV], [xPV, xVV]]
+    private double x;
+    private double xVelocity;
+    private double xPP;
+    private double xPV;
+    private double xVV;
+
+    // North axis: position, velocity and covariance [[yPP, yPV], [yPV, yVV]]
+    private double y;
+    private double yVelocity;
+    private double yPP;
+    private double yPV;
+    private double yVV;
+
+    public LocationKalmanFilter() {
+        this(DEFAULT_ACCELERATION_NOISE);
+    }
+
+    /**
+     *
+     * @param accelerationNoise , the expected standard deviation of the acceleration in meters/second squared,
+     *                          higher values follow the fixes more closely, lower values smooth more.
+     *                          Default = 3 m/s squared.
+     */
+    public LocationKalmanFilter(float accelerationNoise) {
+        this.accelerationVariance = (double) accelerationNoise * accelerationNoise;
+    }
+
+    /**
+     * Update the estimate with a new fix.
+     *
+     * @param fix , the new fix, its time is in milliseconds.
+     * @return false if the fix is older than the last fused fix, or is the last fused fix again
+     * as re-delivered by the passive provider, and has been ignored.
+     */
+    public boolean update(LocationSample fix) {
+        double accuracy = fix.hasAccuracy && fix.accuracy > 0 ? fix.accuracy : DEFAULT_FIX_ACCURACY;
+        double variance = accuracy * accuracy;
+
+        if (!initialized) {
+            initialize(fix, variance);
+            return true;
+        }
+        if (fix.time < lastTime) {
+            return false;
+        }
+        if (fix.time == lastTime && fix.provider == lastProvider) {
+            // the same fix, fusing it again would only shrink the covariance
+            return false;
+        }
+
+        double dt = (fix.time - lastTime) / 1000d;
+        double dt2 = dt * dt;
+        double q = accelerationVariance;
+
+        // Predict, x = x + v.dt
+        x += xVelocity * dt;
+        xPP += 2 * dt * xPV + dt2 * xVV + q * dt2 * dt2 / 4;
+        xPV += dt * xVV + q * dt2 * dt / 2;
+        xVV += q * dt2;
+
+        y += yVelocity * dt;
+        yPP += 2 * dt * yPV + dt2 * yVV + q * dt2 * dt2 / 4;
+        yPV += dt * yVV + q * dt2 * dt / 2;
+        yVV += q * dt2;
+
+        // Correct with the measured position
+        double s = xPP + variance;
+        double positionGain = xPP / s;
+        double velocityGain = xPV / s;
+        double innovation = toX(fix.longitude) - x;
+        x += positionGain * innovation;
+        xVelocity += velocityGain * innovation;
+        xVV -= velocityGain * xPV;
+        xPV *= 1 - positionGain;
+        xPP *= 1 - positionGain;
+
+        s = yPP + variance;
+        positionGain = yPP / s;
+        velocityGain = yPV / s;
+        innovation = toY(fix.latitude) - y;
+        y += positionGain * innovation;
+        yVelocity += velocityGain * innovation;
+        yVV -= velocityGain * yPV;
+        yPV *= 1 - positionGain;
+        yPP *= 1 - positionGain;
+
+        lastTime = fix.time;
+        lastProvider = fix.provider;
+        return true;
+    }
+
+    private void initialize(LocationSample fix, double variance) {
+        originLatitude = fix.latitude;
+        originLongitude = fix.longitude;
+        metersPerDegreeLongitude = Geodesy.METERS_PER_DEGREE * Math.cos(Math.toRadians(originLatitude));
+
+        x = 0;
+        y = 0;
+        xVelocity = 0;
+        yVelocity = 0;
+        xPP = variance;
+        yPP = variance;
+        xPV = 0;
+        yPV = 0;
+        xVV = INITIAL_VELOCITY_ERROR * INITIAL_VELOCITY_ERROR;
+        yVV = INITIAL_VELOCITY_ERROR * INITIAL_VELOCITY_ERROR;
+
+        lastTime = fix.time;
+        lastProvider = fix.provider;
+        initialized = true;
+    }
+
+    private double toX(double longitude) {
+        return (longitude - originLongitude) * metersPerDegreeLongitude;
+    }
+
+    private double toY(double latitude) {
+        return (latitude - originLatitude) * Geodesy.METERS_PER_DEGREE;
+    }
+
+    /**
+     * Write the current estimate into the given sample. The accuracy is the standard deviation
+     * of the position on the least precise axis.
+     *
+     * @param estimate , the sample to fill.
+     * @return the filled sample.
+     */
+    public LocationSample getEstimate(LocationSample estimate) {
+        return estimate.set(
+                originLatitude + y / Geodesy.METERS_PER_DEGREE,
+                originLongitude + x / metersPerDegreeLongitude,
+                (float) Math.sqrt(Math.max(xPP, yPP)),
+                true,
+                (float) Math.sqrt(xVelocity * xVelocity + yVelocity * yVelocity),
+                lastTime,
+                lastProvider);
+    }
+
+    /**
+     * @return true once a first fix has been fused.
+     */
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * Forget the current estimate, the next fix restarts the filter.
+     */
+    public void reset() {
+        initialized = false;
+    }
+}
@@ -0,0 +1,51 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Instrumentation of the location pipeline, see {@link LocationDroid#setMetrics(LocationMetrics)}.
+ *
+ * The methods are called on the thread receiving the location updates, except
+ * {@link #onDelivery(long, long)} which is called on the thread delivering the locations.
+ * They must be fast and should not allocate, see {@link LocationCounters}.
+ */
+public interface LocationMetrics {
+
+    /**
+     * Metrics doing nothing, the default.
+     */
+    LocationMetrics NONE = new LocationMetrics() {
+        @Override
+        public void onFix(int provider, int decision) {
+        }
+
+        @Override
+        public void onComparatorUndecided() {
+        }
+
+        @Override
+        public void onDelivery(long fixAge, long callbackDuration) {
+        }
+    };
+
+    /**
+     * Called for every fix received.
+     *
+     * @param provider , the LocationSample provider id of the fix.
+     * @param decision , the decision taken for the fix, one of the LocationSelector decisions.
+     */
+    void onFix(int provider, int decision);
+
+    /**
+     * Called when the last known locations of two providers cannot be ordered, the newest one
+     * being the least accurate one.
+     */
+    void onComparatorUndecided();
+
+    /**
+     * Called after each delivered location.
+     *
+     * @param fixAge , the time in milliseconds between the fix and its delivery.
+     * @param callbackDuration , the time in nanoseconds spent in the callback, shared by the
+     *                         locations of a batch.
+     */
+    void onDelivery(long fixAge, long callbackDuration);
+}
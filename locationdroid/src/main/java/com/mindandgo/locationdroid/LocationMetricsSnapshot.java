@@ -0,0 +1,111 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Immutable copy of {@link LocationCounters}, to export to a telemetry system.
+ */
+public final class LocationMetricsSnapshot {
+
+    private final long[] fixes;
+    private final long comparatorUndecided;
+    private final long[] callbackDurations;
+    private final long[] fixAges;
+
+    LocationMetricsSnapshot(long[] fixes, long comparatorUndecided, long[] callbackDurations, long[] fixAges) {
+        this.fixes = fixes;
+        this.comparatorUndecided = comparatorUndecided;
+        this.callbackDurations = callbackDurations;
+        this.fixAges = fixAges;
+    }
+
+    // ==========================================================
+    // Fixes
+    // ==========================================================
+
+    /**
+     * @param provider , the LocationSample provider id, PROVIDER_UNKNOWN included.
+     * @param decision , one of the LocationSelector decisions.
+     * @return the number of fixes of the provider which got the decision.
+     */
+    public long getFixCount(int provider, int decision) {
+        if (decision < 0 || decision >= LocationSelector.DECISION_COUNT) {
+            return 0L;
+        }
+        return fixes[LocationCounters.slot(provider) * LocationSelector.DECISION_COUNT + decision];
+    }
+
+    /**
+     * @return the number of fixes received from the provider.
+     */
+    public long getFixCount(int provider) {
+        long count = 0;
+        for (int decision = 0; decision < LocationSelector.DECISION_COUNT; decision++) {
+            count += getFixCount(provider, decision);
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of fixes of all the providers which got the decision.
+     */
+    public long getDecisionCount(int decision) {
+        long count = 0;
+        for (int slot = 0; slot < LocationCounters.PROVIDER_SLOTS; slot++) {
+            count += getFixCount(slot, decision);
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of times the last known locations could not be ordered.
+     */
+    public long getComparatorUndecidedCount() {
+        return comparatorUndecided;
+    }
+
+    // ==========================================================
+    // Histograms
+    // ==========================================================
+
+    /**
+     * @return the callback durations in microseconds, by bucket. A new copy at each call.
+     */
+    public long[] getCallbackDurationHistogram() {
+        return callbackDurations.clone();
+    }
+
+    /**
+     * @return the fix ages at delivery in milliseconds, by bucket. A new copy at each call.
+     */
+    public long[] getFixAgeHistogram() {
+        return fixAges.clone();
+    }
+
+    /**
+     * @param bucket , the bucket index.
+     * @return the largest value counted in the bucket: 0, 1, 3, 7... the last bucket has no bound.
+     */
+    public static long getBucketUpperBound(int bucket) {
+        return bucket >= LocationCounters.BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     * @param histogram , a histogram of this snapshot.
+     * @param percentile , the percentile between 0 and 100.
+     * @return the upper bound of the bucket holding the percentile, 0 if the histogram is empty.
+     */
+    public static long getPercentile(long[] histogram, float percentile) {
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100d);
+        long seen = 0;
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            seen += histogram[bucket];
+            if (seen >= rank && seen > 0) {
+                return getBucketUpperBound(bucket);
+            }
+        }
+        return 0L;
+    }
+}
@@ -0,0 +1,203 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Platform-free processing of the fixes, shared by {@link LocationDroid} and {@link TraceReplay}.
+ *
+ * Each fix goes through the selection or the fusion, the plausibility filter, the metrics, the
+ * provider health and the stationary detection, and the pipeline tells if the fix, or the fused
+ * estimate, must be delivered. The registration of the providers is left to the caller:
+ * {@link #isRegistrationChanged()} tells when it must change, {@link #isStationary()} and
+ * {@link #isSuspended(int)} which providers to register.
+ *
+ * No allocation after construction. Not thread-safe, use it from the thread receiving the fixes.
+ */
+public final class LocationPipeline {
+
+    private final LocationSelector selector;
+    private LocationKalmanFilter fusionFilter = null;
+    private PlausibilityFilter plausibilityFilter = null;
+    private StationaryDetector stationaryDetector = null;
+    private ProviderHealth providerHealth = null;
+    private LocationMetrics metrics = LocationMetrics.NONE;
+
+    // Last offer
+    private int decision = LocationSelector.REJECTED;
+    private boolean registrationChanged = false;
+
+    /**
+     *
+     * @param selector , the selector deciding which fixes are accepted, keeping the current one.
+     */
+    public LocationPipeline(LocationSelector selector) {
+        this.selector = selector;
+    }
+
+    // ==========================================================
+    // Fixes
+    // ==========================================================
+
+    /**
+     * Process a new fix.
+     *
+     * @param fix , the new fix, replaced by the estimate when it is fused.
+     * @param time , the current time in milliseconds, for the provider health.
+     * @return true if the fix must be delivered: accepted and not at the same place while the
+     * device is stationary. The decision is given by {@link #getDecision()}.
+     */
+    public boolean offer(LocationSample fix, long time) {
+        int provider = fix.provider;
+        float accuracy = fix.accuracy;
+        decision = decide(fix);
+        registrationChanged = false;
+        boolean accepted = LocationSelector.isAcceptedDecision(decision);
+        metrics.onFix(provider, decision);
+        if (providerHealth != null) {
+            providerHealth.onFix(provider, accuracy, accepted, time);
+            registrationChanged = providerHealth.update(time);
+        }
+        if (!accepted || stationaryDetector == null) {
+            return accepted;
+        }
+        if (stationaryDetector.update(fix)) {
+            // the first stationary fix is delivered, the moving one too
+            registrationChanged = true;
+            return true;
+        }
+        return !stationaryDetector.isStationary();
+    }
+
+    private int decide(LocationSample fix) {
+        if (fusionFilter != null) {
+            if (plausibilityFilter != null && !plausibilityFilter.offer(fix)) {
+                return LocationSelector.REJECTED_IMPLAUSIBLE;
+            }
+            if (!fusionFilter.update(fix)) {
+                return LocationSelector.REJECTED;
+            }
+            fusionFilter.getEstimate(fix);
+            selector.setCurrent(fix);
+            return LocationSelector.ACCEPTED_FUSED;
+        }
+        int decision = selector.decide(fix);
+        if (!LocationSelector.isAcceptedDecision(decision)) {
+            return decision;
+        }
+        if (plausibilityFilter != null && !plausibilityFilter.offer(fix)) {
+            return LocationSelector.REJECTED_IMPLAUSIBLE;
+        }
+        selector.setCurrent(fix);
+        return decision;
+    }
+
+    /**
+     * Resume the suspended providers at the end of their backoff, without waiting for a fix.
+     *
+     * @param time , the current time in milliseconds.
+     * @return true if the registration of the providers must change.
+     */
+    public boolean updateProviderHealth(long time) {
+        return providerHealth != null && providerHealth.update(time);
+    }
+
+    /**
+     * Forget the fixes of the filters and of the stationary detection, before a new start.
+     */
+    public void reset() {
+        if (fusionFilter != null) {
+            fusionFilter.reset();
+        }
+        if (plausibilityFilter != null) {
+            plausibilityFilter.reset();
+        }
+        if (stationaryDetector != null) {
+            stationaryDetector.reset();
+        }
+    }
+
+    // ==========================================================
+    // Getters
+    // ==========================================================
+
+    /**
+     * @return the decision of the last fix, one of the LocationSelector decisions.
+     */
+    public int getDecision() {
+        return decision;
+    }
+
+    /**
+     * @return true if the last fix suspended or resumed a provider, or changed the stationary
+     * state: the providers must be registered again.
+     */
+    public boolean isRegistrationChanged() {
+        return registrationChanged;
+    }
+
+    /**
+     * @return true if the device is stationary: only the passive provider must be registered.
+     */
+    public boolean isStationary() {
+        return stationaryDetector != null && stationaryDetector.isStationary();
+    }
+
+    /**
+     * @return true if the provider is suspended by the provider health and must not be registered.
+     */
+    public boolean isSuspended(int provider) {
+        return providerHealth != null && providerHealth.isSuspended(provider);
+    }
+
+    public LocationKalmanFilter getFusionFilter() {
+        return fusionFilter;
+    }
+
+    public ProviderHealth getProviderHealth() {
+        return providerHealth;
+    }
+
+    // ==========================================================
+    // Setters -- Options
+    // ==========================================================
+
+    /**
+     * @param fusionFilter , the filter fusing every fix instead of the selection, null to use the
+     *                     selection. Default = null.
+     */
+    public LocationPipeline setFusionFilter(LocationKalmanFilter fusionFilter) {
+        this.fusionFilter = fusionFilter;
+        return this;
+    }
+
+    /**
+     * @param plausibilityFilter , the filter rejecting the impossible movements, null to not
+     *                           check them. Default = null.
+     */
+    public LocationPipeline setPlausibilityFilter(PlausibilityFilter plausibilityFilter) {
+        this.plausibilityFilter = plausibilityFilter;
+        return this;
+    }
+
+    /**
+     * @param stationaryDetector , the detector, null to never be stationary. Default = null.
+     */
+    public LocationPipeline setStationaryDetector(StationaryDetector stationaryDetector) {
+        this.stationaryDetector = stationaryDetector;
+        return this;
+    }
+
+    /**
+     * @param providerHealth , the provider health, null to never suspend a provider. Default = null.
+     */
+    public LocationPipeline setProviderHealth(ProviderHealth providerHealth) {
+        this.providerHealth = providerHealth;
+        return this;
+    }
+
+    /**
+     * @param metrics , the metrics receiving the decisions, null to disable them. Default = disabled.
+     */
+    public LocationPipeline setMetrics(LocationMetrics metrics) {
+        this.metrics = metrics == null ? LocationMetrics.NONE : metrics;
+        return this;
+    }
+}
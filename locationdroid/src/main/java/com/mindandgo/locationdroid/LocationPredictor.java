@@ -0,0 +1,243 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Predicts the position between the accepted locations by dead reckoning, for a map rendered
+ * at a higher rate than the fixes, see {@link LocationDroid#setPredictor(LocationPredictor)}.
+ *
+ * The velocity is measured from a base location, the last one whose distance to the previous base
+ * exceeded their accuracies: the jitter of a stationary device is not a movement, while a slow
+ * movement is measured over several fixes. Until the distance to the base exceeds the accuracies,
+ * the velocity is measured from the previous base, for at most the time the last movement took to
+ * exceed them. A reported speed gives the magnitude of the velocity, the base its direction. The
+ * velocity is zero after a provider change. The prediction extrapolates the last location along it, up to the max
+ * extrapolation time, with a confidence radius growing with the extrapolation time. Each new
+ * location resets the prediction, the radius going back to its accuracy.
+ *
+ * One thread updates the predictor, the thread receiving the location updates. Any thread can
+ * predict at any rate: the state is published with a sequence number, a prediction never locks
+ * nor allocates and retries in the rare case it overlapped an update.
+ */
+public final class LocationPredictor {
+
+    // ==========================================================
+    // Constants
+    // ==========================================================
+    static final long DEFAULT_MAX_EXTRAPOLATION = 30000000000L;
+    static final float DEFAULT_ACCELERATION_NOISE = 2f;
+    static final float DEFAULT_VELOCITY_ERROR = 1f;
+    // beyond, the base location does not give a velocity
+    private static final long MAX_VELOCITY_INTERVAL = 60000L;
+
+    private final long maxExtrapolation;
+    private final float accelerationNoise;
+    private final float velocityError;
+
+    // Writer only
+    private boolean hasBase = false;
+    private double baseLatitude;
+    private double baseLongitude;
+    private float baseAccuracy;
+    private long baseTime;
+    private int baseProvider;
+    private boolean hasOrigin = false;
+    private double originLatitude;
+    private double originLongitude;
+    private float originAccuracy;
+    private long originTime;
+    // displacement in meters of the last measure
+    private double northMeters;
+    private double eastMeters;
+    private final Geodesy.Equirectangular geodesy = new Geodesy.Equirectangular();
+
+    // Published state, consistent when the sequence is even and unchanged
+    private volatile int sequence = 0;
+    private volatile boolean valid = false;
+    private volatile double anchorLatitude;
+    private volatile double anchorLongitude;
+    private volatile float anchorAccuracy;
+    private volatile long anchorTime;
+    private volatile long anchorNanos;
+    private volatile int anchorProvider;
+    // meters/second
+    private volatile double velocityNorth;
+    private volatile double velocityEast;
+    private volatile double metersPerDegreeLongitude;
+
+    public LocationPredictor() {
+        this(DEFAULT_MAX_EXTRAPOLATION, DEFAULT_ACCELERATION_NOISE, DEFAULT_VELOCITY_ERROR);
+    }
+
+    /**
+     *
+     * @param maxExtrapolation , the time in nanoseconds after a location beyond which the position
+     *                         is no longer extrapolated. Default = 30 seconds.
+     * @param accelerationNoise , the possible acceleration in meters/second squared, growing the
+     *                          confidence radius. Default = 2.
+     * @param velocityError , the error of the velocity in meters/second, growing the confidence
+     *                      radius. Default = 1.
+     */
+    public LocationPredictor(long maxExtrapolation, float accelerationNoise, float velocityError) {
+        if (maxExtrapolation < 0) {
+            throw new IllegalArgumentException("Max extrapolation cannot be lower than 0");
+        }
+        this.maxExtrapolation = maxExtrapolation;
+        this.accelerationNoise = accelerationNoise;
+        this.velocityError = velocityError;
+    }
+
+    // ==========================================================
+    // Update
+    // ==========================================================
+
+    /**
+     * Reset the prediction to a new accepted location. Must always be called from the same thread.
+     *
+     * @param sample , the location, its time in milliseconds.
+     * @param timestampNanos , the System.nanoTime() of the reception of the location.
+     */
+    public void update(LocationSample sample, long timestampNanos) {
+        double north = 0d;
+        double east = 0d;
+        float accuracy = sample.hasAccuracy ? sample.accuracy : 0f;
+        if (!hasBase || sample.provider != baseProvider || sample.time <= baseTime
+                || sample.time - baseTime > MAX_VELOCITY_INTERVAL) {
+            // no velocity until the distance to this new base exceeds the accuracies
+            hasOrigin = false;
+            setBase(sample, accuracy);
+        } else {
+            double distance = measure(sample, baseLatitude, baseLongitude);
+            boolean moved = distance > accuracy + baseAccuracy;
+            long interval = sample.time - baseTime;
+            if (!moved && hasOrigin && interval <= baseTime - originTime) {
+                // still within the time the last movement took, measured from the previous base
+                double originDistance = measure(sample, originLatitude, originLongitude);
+                if (originDistance > accuracy + originAccuracy) {
+                    distance = originDistance;
+                    interval = sample.time - originTime;
+                } else {
+                    distance = measure(sample, baseLatitude, baseLongitude);
+                    interval = 0L;
+                }
+            } else if (!moved) {
+                interval = 0L;
+            }
+            if (sample.speed > 0 && distance > 0) {
+                // the direction of the movement at the reported speed
+                north = northMeters * sample.speed / distance;
+                east = eastMeters * sample.speed / distance;
+            } else if (interval > 0) {
+                north = northMeters * 1000d / interval;
+                east = eastMeters * 1000d / interval;
+            }
+            if (moved) {
+                hasOrigin = true;
+                originLatitude = baseLatitude;
+                originLongitude = baseLongitude;
+                originAccuracy = baseAccuracy;
+                originTime = baseTime;
+                setBase(sample, accuracy);
+            }
+        }
+
+        int next = sequence + 1;
+        sequence = next;
+        anchorLatitude = sample.latitude;
+        anchorLongitude = sample.longitude;
+        anchorAccuracy = accuracy;
+        anchorTime = sample.time;
+        anchorNanos = timestampNanos;
+        anchorProvider = sample.provider;
+        velocityNorth = north;
+        velocityEast = east;
+        metersPerDegreeLongitude = Geodesy.METERS_PER_DEGREE * geodesy.cos(sample.latitude);
+        valid = true;
+        sequence = next + 1;
+    }
+
+    private void setBase(LocationSample sample, float accuracy) {
+        hasBase = true;
+        baseLatitude = sample.latitude;
+        baseLongitude = sample.longitude;
+        baseAccuracy = accuracy;
+        baseTime = sample.time;
+        baseProvider = sample.provider;
+    }
+
+    /**
+     * @return the distance in meters from the location to the sample, its components in
+     * northMeters and eastMeters.
+     */
+    private double measure(LocationSample sample, double latitude, double longitude) {
+        northMeters = (sample.latitude - latitude) * Geodesy.METERS_PER_DEGREE;
+        eastMeters = (sample.longitude - longitude) * Geodesy.METERS_PER_DEGREE * geodesy.cos(sample.latitude);
+        return Math.sqrt(northMeters * northMeters + eastMeters * eastMeters);
+    }
+
+    /**
+     * Forget the locations, nothing is predicted until the next update. Must be called from the
+     * thread updating the predictor.
+     */
+    public void reset() {
+        hasBase = false;
+        hasOrigin = false;
+        int next = sequence + 1;
+        sequence = next;
+        valid = false;
+        sequence = next + 1;
+    }
+
+    // ==========================================================
+    // Prediction
+    // ==========================================================
+
+    /**
+     * Predict the position at a given time. Can be called from any thread.
+     *
+     * @param timestampNanos , the System.nanoTime() of the prediction.
+     * @param prediction , filled with the predicted position, its accuracy being the confidence
+     *                   radius in meters, its speed the predicted speed and its time the predicted
+     *                   time in milliseconds.
+     * @return false if no location is known yet, the prediction is then unchanged.
+     */
+    public boolean predict(long timestampNanos, LocationSample prediction) {
+        boolean known;
+        double latitude;
+        double longitude;
+        float accuracy;
+        long time;
+        long nanos;
+        int provider;
+        double north;
+        double east;
+        double metersPerDegree;
+        int before;
+        do {
+            before = sequence;
+            known = valid;
+            latitude = anchorLatitude;
+            longitude = anchorLongitude;
+            accuracy = anchorAccuracy;
+            time = anchorTime;
+            nanos = anchorNanos;
+            provider = anchorProvider;
+            north = velocityNorth;
+            east = velocityEast;
+            metersPerDegree = metersPerDegreeLongitude;
+        } while ((before & 1) != 0 || before != sequence);
+
+        if (!known) {
+            return false;
+        }
+        long elapsedNanos = Math.max(0L, timestampNanos - nanos);
+        double extrapolated = Math.min(elapsedNanos, maxExtrapolation) / 1e9d;
+        double elapsed = elapsedNanos / 1e9d;
+        float radius = (float) (accuracy + velocityError * elapsed + 0.5d * accelerationNoise * elapsed * elapsed);
+        prediction.set(latitude + north * extrapolated / Geodesy.METERS_PER_DEGREE,
+                longitude + east * extrapolated / metersPerDegree,
+                radius, true,
+                elapsedNanos < maxExtrapolation ? (float) Math.sqrt(north * north + east * east) : 0f,
+                time + elapsedNanos / 1000000L,
+                provider);
+        return true;
+    }
+}
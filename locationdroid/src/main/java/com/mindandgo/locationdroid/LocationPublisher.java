@@ -0,0 +1,452 @@
+package com.mindandgo.locationdroid;
+
+import android.Manifest;
+import android.content.Context;
+import android.location.Location;
+import android.os.Bundle;
+import android.support.annotation.RequiresPermission;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the locations to many subscribers with backpressure, following the Reactive Streams
+ * rules: a subscriber receives a location only after requesting it.
+ *
+ * All the subscribers share a single provider registration and selection. Each subscriber has
+ * its own bounded queue and receives its locations serially on its own executor, so a slow
+ * subscriber never blocks the thread receiving the location updates nor the other subscribers.
+ * When a queue is full the {@link Overflow} strategy of the subscriber applies. The publisher
+ * starts with the first subscriber and stops when the last one cancels.
+ *
+ * Not used with the batching, see {@link #setBatching(int, long)}.
+ */
+public class LocationPublisher extends LocationDroid {
+
+    static final String REQUEST_ERROR = "The number of requested locations must be greater than 0";
+    private static final Downstream[] NO_DOWNSTREAM = new Downstream[0];
+
+    /**
+     * What to do with a new location when the queue of a subscriber is full.
+     */
+    public enum Overflow {
+        /** Keep only the newest location, the queue capacity is 1. */
+        LATEST,
+        /** Signal an {@link OverflowException} to the subscriber and cancel it. */
+        ERROR,
+        /** Drop the new location. */
+        DROP
+    }
+
+    /**
+     * Provides the locations to the subscribers on their demand, see {@link #asPublisher()}.
+     */
+    public interface Publisher {
+
+        /**
+         * Subscribe with the {@link Overflow#LATEST} strategy.
+         *
+         * @param subscriber , the subscriber.
+         * @param executor , the executor calling the subscriber.
+         */
+        void subscribe(Subscriber subscriber, Executor executor) throws SecurityException;
+
+        /**
+         * @param subscriber , the subscriber.
+         * @param executor , the executor calling the subscriber.
+         * @param overflow , the strategy when the queue of the subscriber is full.
+         * @param capacity , the capacity of the queue of the subscriber.
+         */
+        void subscribe(Subscriber subscriber, Executor executor, Overflow overflow, int capacity)
+                throws SecurityException;
+    }
+
+    /**
+     * Receives the locations of a {@link Publisher}, the methods being called serially.
+     */
+    public interface Subscriber {
+
+        /**
+         * Called first, request locations through the subscription to receive them.
+         *
+         * @param subscription , the subscription.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * @param location , a requested location.
+         */
+        void onNext(Location location);
+
+        /**
+         * Called at most once, no other method is called after.
+         *
+         * @param error , the error, an {@link OverflowException} for instance.
+         */
+        void onError(Throwable error);
+
+        /**
+         * Called at most once when the publisher is stopped, no other method is called after.
+         */
+        void onComplete();
+    }
+
+    /**
+     * Demand of a subscriber. Can be used from any thread.
+     */
+    public interface Subscription {
+
+        /**
+         * @param count , the number of additional locations the subscriber can receive,
+         *              Long.MAX_VALUE for no limit.
+         */
+        void request(long count);
+
+        /**
+         * Stop the delivery, the queued locations are dropped.
+         */
+        void cancel();
+    }
+
+    /**
+     * Signaled when the queue of a {@link Overflow#ERROR} subscriber is full.
+     */
+    public static final class OverflowException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        OverflowException(int capacity) {
+            super("More than " + capacity + " locations waiting for the subscriber");
+        }
+    }
+
+    // copy on write, read without lock by the thread receiving the location updates
+    private volatile Downstream[] downstreams = NO_DOWNSTREAM;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Publisher publisher = new Publisher() {
+        @Override
+        public void subscribe(Subscriber subscriber, Executor executor) throws SecurityException {
+            LocationPublisher.this.subscribe(subscriber, executor);
+        }
+
+        @Override
+        public void subscribe(Subscriber subscriber, Executor executor, Overflow overflow, int capacity)
+                throws SecurityException {
+            LocationPublisher.this.subscribe(subscriber, executor, overflow, capacity);
+        }
+    };
+
+    /**
+     *
+     * @param context , the context to be used to construct the LocationPublisher class.
+     */
+    @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
+    public LocationPublisher(Context context) throws SecurityException {
+        super(context);
+    }
+
+    // ==========================================================
+    // Subscriptions
+    // ==========================================================
+
+    /**
+     * Subscribe with the {@link Overflow#LATEST} strategy.
+     *
+     * @param subscriber , the subscriber.
+     * @param executor , the executor calling the subscriber, a single thread executor for instance.
+     */
+    public void subscribe(Subscriber subscriber, Executor executor) throws SecurityException {
+        subscribe(subscriber, executor, Overflow.LATEST, 1);
+    }
+
+    /**
+     * Add a subscriber, the location service is started with the first subscriber. The current
+     * best location, if any, is the first location queued for the subscriber, unless a newer one
+     * was already queued.
+     *
+     * @param subscriber , the subscriber.
+     * @param executor , the executor calling the subscriber, a single thread executor for instance.
+     * @param overflow , the strategy when the queue of the subscriber is full.
+     * @param capacity , the capacity of the queue of the subscriber, ignored with {@link Overflow#LATEST}.
+     */
+    public void subscribe(Subscriber subscriber, Executor executor, Overflow overflow, int capacity)
+            throws SecurityException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity cannot be lower than 1");
+        }
+        Downstream downstream = new Downstream(subscriber, executor, overflow,
+                overflow == Overflow.LATEST ? 1 : capacity);
+        subscriber.onSubscribe(downstream);
+        synchronized (this) {
+            if (downstream.cancelled) {
+                return;
+            }
+            Downstream[] current = downstreams;
+            Downstream[] updated = new Downstream[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = downstream;
+            downstreams = updated;
+            if (!isStarted()) {
+                start();
+            }
+        }
+        // read after the downstream is published: a newer location is either this one or queued
+        // by the thread receiving the location updates
+        Location currentLocation = getCurrentLocation();
+        if (currentLocation != null) {
+            downstream.offerFirst(currentLocation);
+        }
+    }
+
+    private synchronized void remove(Downstream downstream) {
+        Downstream[] current = downstreams;
+        int index = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == downstream) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return;
+        }
+        if (current.length == 1) {
+            downstreams = NO_DOWNSTREAM;
+            try {
+                super.stop();
+            } catch (SecurityException e) {
+                // the permission has been revoked, nothing is registered anymore
+            }
+            return;
+        }
+        Downstream[] updated = new Downstream[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, updated.length - index);
+        downstreams = updated;
+    }
+
+    /**
+     * @return this publisher as a {@link Publisher}, for the code depending only on the interface.
+     */
+    public Publisher asPublisher() {
+        return publisher;
+    }
+
+    /**
+     * @return the number of subscribers.
+     */
+    public int getSubscriberCount() {
+        return downstreams.length;
+    }
+
+    /**
+     * @return the number of locations dropped by the {@link Overflow#LATEST} and
+     * {@link Overflow#DROP} subscribers since the creation.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Stop the location service and complete all the subscribers, after their queued locations.
+     */
+    @Override
+    public synchronized void stop() throws SecurityException {
+        Downstream[] current = downstreams;
+        downstreams = NO_DOWNSTREAM;
+        super.stop();
+        for (Downstream downstream : current) {
+            downstream.complete();
+        }
+    }
+
+    // ==========================================================
+    // Fan out
+    // ==========================================================
+    @Override
+    public void onNewLocation(Location currentLocation) {
+        for (Downstream downstream : downstreams) {
+            downstream.offer(currentLocation);
+        }
+    }
+
+    @Override
+    public void onProviderEnabled(String s) {
+    }
+
+    @Override
+    public void onProviderDisabled(String s) {
+    }
+
+    @Override
+    public void serviceProviderStatusListener(String provider, int status, Bundle bundle) {
+    }
+
+    /**
+     * A subscriber with its queue and demand. The locations are queued by the thread receiving
+     * the location updates and drained on the executor of the subscriber by a single task at a time.
+     */
+    private final class Downstream implements Subscription, Runnable {
+
+        private final Subscriber subscriber;
+        private final Executor executor;
+        private final Overflow overflow;
+        private final int capacity;
+
+        // guarded by itself
+        private final ArrayDeque<Location> queue;
+        // guarded by the queue, the last location offered, to not queue twice the current one
+        private Location last = null;
+        private final AtomicLong requested = new AtomicLong();
+        // number of drain requests, a drain task runs while it is not 0
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private volatile boolean completed = false;
+        private volatile Throwable error = null;
+        private boolean terminated = false;
+
+        private Downstream(Subscriber subscriber, Executor executor, Overflow overflow, int capacity) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+            this.overflow = overflow;
+            this.capacity = capacity;
+            this.queue = new ArrayDeque<>(capacity);
+        }
+
+        private void offer(Location location) {
+            if (cancelled || completed || error != null) {
+                return;
+            }
+            synchronized (queue) {
+                if (location == last) {
+                    return;
+                }
+                last = location;
+                if (queue.size() >= capacity) {
+                    switch (overflow) {
+                        case LATEST:
+                            queue.poll();
+                            droppedCount.incrementAndGet();
+                            break;
+                        case ERROR:
+                            queue.clear();
+                            error = new OverflowException(capacity);
+                            break;
+                        default:
+                            droppedCount.incrementAndGet();
+                            return;
+                    }
+                }
+                if (error == null) {
+                    queue.offer(location);
+                }
+            }
+            drain();
+        }
+
+        /**
+         * Offer the location current at the subscription, unless a location was already offered:
+         * it is the same or a newer one.
+         */
+        private void offerFirst(Location location) {
+            synchronized (queue) {
+                if (last != null) {
+                    return;
+                }
+            }
+            offer(location);
+        }
+
+        private void complete() {
+            completed = true;
+            drain();
+        }
+
+        @Override
+        public void request(long count) {
+            if (count <= 0) {
+                error = new IllegalArgumentException(REQUEST_ERROR);
+            } else {
+                long current;
+                long updated;
+                do {
+                    current = requested.get();
+                    updated = current + count < 0 ? Long.MAX_VALUE : current + count;
+                } while (!requested.compareAndSet(current, updated));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            synchronized (queue) {
+                queue.clear();
+            }
+            remove(this);
+        }
+
+        private void drain() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (terminated || cancelled) {
+                    return;
+                }
+                long demand = requested.get();
+                long delivered = 0;
+                while (delivered != demand && error == null && !cancelled) {
+                    Location location;
+                    synchronized (queue) {
+                        location = queue.poll();
+                    }
+                    if (location == null) {
+                        break;
+                    }
+                    subscriber.onNext(location);
+                    delivered++;
+                }
+                if (delivered != 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-delivered);
+                }
+                if (!cancelled && terminate()) {
+                    return;
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * @return true if the subscriber received its error or its completion.
+         */
+        private boolean terminate() {
+            Throwable currentError = error;
+            boolean empty;
+            synchronized (queue) {
+                empty = queue.isEmpty();
+            }
+            if (currentError == null && !(completed && empty)) {
+                return false;
+            }
+            terminated = true;
+            cancel();
+            if (currentError != null) {
+                subscriber.onError(currentError);
+            } else {
+                subscriber.onComplete();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Mutable, reusable holder for the primitive fields of a location fix.
+ *
+ * A single instance is meant to be filled and handed to the {@link LocationSelector} for every
+ * fix, so the selection path never allocates and never depends on android.location.Location.
+ */
+public final class LocationSample {
+
+    // ==========================================================
+    // Provider ids
+    // ==========================================================
+    public static final int PROVIDER_UNKNOWN = -1;
+    public static final int PROVIDER_GPS = 0;
+    public static final int PROVIDER_NETWORK = 1;
+    public static final int PROVIDER_PASSIVE = 2;
+    public static final int PROVIDER_COUNT = 3;
+
+    public double latitude;
+    public double longitude;
+    public float accuracy;
+    public boolean hasAccuracy;
+    public float speed;
+    public long time;
+    public int provider = PROVIDER_UNKNOWN;
+
+    /**
+     * Fill every field of the sample.
+     *
+     * @param latitude , latitude in degrees.
+     * @param longitude , longitude in degrees.
+     * @param accuracy , the accuracy in meters, 0 if unknown.
+     * @param hasAccuracy , true if the accuracy is known.
+     * @param speed , the speed in meters/second, 0 if unknown.
+     * @param time , the time of the fix.
+     * @param provider , one of the PROVIDER_* ids.
+     * @return this sample.
+     */
+    public LocationSample set(double latitude, double longitude, float accuracy, boolean hasAccuracy,
+                              float speed, long time, int provider) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracy = accuracy;
+        this.hasAccuracy = hasAccuracy;
+        this.speed = speed;
+        this.time = time;
+        this.provider = provider;
+        return this;
+    }
+
+    /**
+     * Copy every field of the given sample into this one.
+     *
+     * @param other , the sample to copy.
+     * @return this sample.
+     */
+    public LocationSample copyFrom(LocationSample other) {
+        return set(other.latitude, other.longitude, other.accuracy, other.hasAccuracy,
+                other.speed, other.time, other.provider);
+    }
+
+    /**
+     * Reset the sample to its initial state.
+     */
+    public void clear() {
+        set(0d, 0d, 0f, false, 0f, 0L, PROVIDER_UNKNOWN);
+    }
+}
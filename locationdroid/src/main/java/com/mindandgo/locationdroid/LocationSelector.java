@@ -0,0 +1,250 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Platform-free best location selection.
+ *
+ * Holds a copy of the current best fix and decides, for every new {@link LocationSample},
+ * if it should replace it. No allocation is done after construction.
+ */
+public class LocationSelector {
+
+    private final LocationSample currentSample = new LocationSample();
+    private boolean hasCurrent = false;
+    private float distanceBetweenUpdates;
+    private float maxTimeBetweenUpdates;
+
+    // ==========================================================
+    // Error messages
+    // ==========================================================
+    static final String PRECISION_ERROR = "Distance between updates cannot be lower than 1 meter";
+    static final String MAX_TIME_ERROR = "Default max time between updates cannot be lower than 1 second";
+
+    // ==========================================================
+    // Constants
+    // ==========================================================
+    static final float DEFAULT_PRECISION = 10f;
+    static final float DEFAULT_MAX_TIME = 30f;
+
+    // ==========================================================
+    // Decisions
+    // ==========================================================
+    /** The fix is less accurate than the current best fix and too recent to replace it. */
+    public static final int REJECTED = 0;
+    /** The fix is the first one. */
+    public static final int ACCEPTED_FIRST = 1;
+    /** The fix is at least as accurate as the current best fix. */
+    public static final int ACCEPTED_ACCURACY = 2;
+    /** The fix is less accurate but the max time between updates is elapsed. */
+    public static final int ACCEPTED_TIME = 3;
+    /** The fix has been fused by the Kalman filter, never returned by {@link #decide(LocationSample)}. */
+    public static final int ACCEPTED_FUSED = 4;
+    /** The fix implies an impossible movement, never returned by {@link #decide(LocationSample)}. */
+    public static final int REJECTED_IMPLAUSIBLE = 5;
+    public static final int DECISION_COUNT = 6;
+
+    // ==========================================================
+    // Constructors
+    // ==========================================================
+    public LocationSelector() {
+        this(DEFAULT_PRECISION, DEFAULT_MAX_TIME);
+    }
+
+    /**
+     *
+     * @param distanceBetweenUpdates , the number of meters between two location updates.
+     * @param maxTimeBetweenUpdates , the maximum time in seconds between two location updates.
+     */
+    public LocationSelector(float distanceBetweenUpdates, float maxTimeBetweenUpdates) {
+        this.distanceBetweenUpdates = distanceBetweenUpdates;
+        this.maxTimeBetweenUpdates = maxTimeBetweenUpdates;
+    }
+
+    // ==========================================================
+    // Best location selection
+    // ==========================================================
+
+    /**
+     * Offer a new fix to the selector. If the fix is accepted it is copied as the current best
+     * fix, the given sample can be reused by the caller right after the call.
+     *
+     * @param newSample , the new fix.
+     * @return true if the new fix replaced the current best fix.
+     */
+    public boolean offer(LocationSample newSample) {
+        if (!isAccepted(newSample)) {
+            return false;
+        }
+        setCurrent(newSample);
+        return true;
+    }
+
+    /**
+     * Same rules as {@link #offer(LocationSample)} without modifying the current best fix.
+     *
+     * @param newSample , the new fix.
+     * @return true if the new fix would replace the current best fix.
+     */
+    public boolean isAccepted(LocationSample newSample) {
+        return decide(newSample) != REJECTED;
+    }
+
+    /**
+     * Same rules as {@link #isAccepted(LocationSample)}, giving the reason of the decision.
+     *
+     * @param newSample , the new fix.
+     * @return {@link #REJECTED}, {@link #ACCEPTED_FIRST}, {@link #ACCEPTED_ACCURACY} or {@link #ACCEPTED_TIME}.
+     */
+    public int decide(LocationSample newSample) {
+        if (!hasCurrent) {
+            return ACCEPTED_FIRST;
+        }
+        // if the newLocation accuracy is better than the current location accuracy
+        if (newSample.accuracy <= currentSample.accuracy) {
+            return ACCEPTED_ACCURACY;
+        }
+        // if the time difference between the both location is bigger than
+        // maxTimeBetweenUpdates, the times being in milliseconds
+        if (newSample.time - currentSample.time > getMaxTimeBetweenUpdates(newSample.speed) * 1000f) {
+            return ACCEPTED_TIME;
+        }
+        return REJECTED;
+    }
+
+    /**
+     * @param decision , one of the decisions.
+     * @return true if the decision accepts the fix.
+     */
+    public static boolean isAcceptedDecision(int decision) {
+        return decision >= ACCEPTED_FIRST && decision <= ACCEPTED_FUSED;
+    }
+
+    /**
+     * The maximum time between location update is calculated according the 'distanceBetweenUpdates'
+     * and the given speed.
+     *
+     * @param speed , the speed in meters/second.
+     * @return the time in seconds the user needs to do the distanceBetweenUpdates, bounded by
+     * maxTimeBetweenUpdates.
+     */
+    public float getMaxTimeBetweenUpdates(float speed) {
+        // The maxTimeBetweenUpdates is the time that the user need to do the distance set
+        // by the distanceBetweenUpdates.
+        float time = distanceBetweenUpdates / speed;
+
+        // Default value for maxTimeBetweenUpdates
+        float maxTimeBetweenUpdates = this.maxTimeBetweenUpdates;
+
+        // if the calculated maxTimeBetweenUpdates is lower than the default value and not
+        // equal to zero, the calculated value is the new maxTimeBetweenUpdates
+        if (time < maxTimeBetweenUpdates && time != 0) {
+            maxTimeBetweenUpdates = time;
+        }
+        return maxTimeBetweenUpdates;
+    }
+
+    /**
+     * Compare two fixes according their time and accuracy.
+     *
+     * @return the best of the both samples, or null if the newest one is not the most accurate one.
+     */
+    public static LocationSample accuracyAndTimeComparator(LocationSample sample1, LocationSample sample2) {
+        LocationSample bestTime = null;
+        LocationSample bestAccuracy = null;
+
+        // if sample times are different, get the newest sample
+        if (sample1.time != sample2.time) {
+            bestTime = sample1.time < sample2.time ? sample2 : sample1;
+        }
+        // if the accuracies are different, get the best accuracy
+        if (sample1.hasAccuracy && sample2.hasAccuracy && sample1.accuracy != sample2.accuracy) {
+            bestAccuracy = sample1.accuracy < sample2.accuracy ? sample1 : sample2;
+        }
+        // if only sample1 has an accuracy
+        else if (sample1.hasAccuracy && !sample2.hasAccuracy) {
+            bestAccuracy = sample1;
+        }
+        // if only sample2 has an accuracy
+        else if (!sample1.hasAccuracy && sample2.hasAccuracy) {
+            bestAccuracy = sample2;
+        }
+
+        // if the sample with the best accuracy is also the sample with the best time,
+        // this sample is the best sample of the both
+        if (bestAccuracy == bestTime) {
+            return bestAccuracy;
+        } else if (bestAccuracy == null) {
+            return bestTime;
+        } else if (bestTime == null) {
+            return bestAccuracy;
+        }
+        // In all other cases it's not possible to determine which one is the best, return null
+        else {
+            return null;
+        }
+    }
+
+    // ==========================================================
+    // Current best fix
+    // ==========================================================
+
+    /**
+     * @return true if a current best fix is known.
+     */
+    public boolean hasCurrent() {
+        return hasCurrent;
+    }
+
+    /**
+     * @return the current best fix, only valid if {@link #hasCurrent()}. Must not be modified.
+     */
+    public LocationSample getCurrent() {
+        return currentSample;
+    }
+
+    /**
+     * Force the current best fix, the sample is copied.
+     *
+     * @param sample , the new current best fix, null to forget the current one.
+     */
+    public void setCurrent(LocationSample sample) {
+        if (sample == null) {
+            currentSample.clear();
+            hasCurrent = false;
+        } else {
+            currentSample.copyFrom(sample);
+            hasCurrent = true;
+        }
+    }
+
+    // ==========================================================
+    // Getters
+    // ==========================================================
+    public float getDistanceBetweenUpdates() {
+        return distanceBetweenUpdates;
+    }
+
+    public float getMaxTimeBetweenUpdates() {
+        return maxTimeBetweenUpdates;
+    }
+
+    // ==========================================================
+    // Setters -- Options
+    // ==========================================================
+    public LocationSelector setDistanceBetweenUpdates(float distanceBetweenUpdates) {
+        if (distanceBetweenUpdates <= 0) {
+            throw new IllegalArgumentException(PRECISION_ERROR);
+        } else {
+            this.distanceBetweenUpdates = distanceBetweenUpdates;
+        }
+        return this;
+    }
+
+    public LocationSelector setMaxTimeBetweenUpdates(float maxTimeBetweenUpdates) {
+        if (maxTimeBetweenUpdates <= 0) {
+            throw new IllegalArgumentException(MAX_TIME_ERROR);
+        } else {
+            this.maxTimeBetweenUpdates = maxTimeBetweenUpdates;
+        }
+        return this;
+    }
+}
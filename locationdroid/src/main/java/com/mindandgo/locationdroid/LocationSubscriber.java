@@ -0,0 +1,16 @@
+package com.mindandgo.locationdroid;
+
+import android.location.Location;
+
+/**
+ * Subscriber of a {@link LocationHub}.
+ */
+public interface LocationSubscriber {
+
+    /**
+     * Call back to be used to listen at location changes
+     *
+     * @param location , the current best location.
+     */
+    void onNewLocation(Location location);
+}
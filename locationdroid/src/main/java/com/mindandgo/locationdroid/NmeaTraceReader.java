@@ -0,0 +1,169 @@
+package com.mindandgo.locationdroid;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads an NMEA 0183 trace, as logged by a GPS receiver.
+ *
+ * A fix is read from each valid RMC sentence (position, speed, date and time). The accuracy is
+ * estimated from the horizontal dilution of precision of the GGA sentence of the same time,
+ * multiplied by {@link #UERE}. The sentences with a wrong checksum are skipped, as well as the
+ * other sentence types.
+ */
+public final class NmeaTraceReader implements TraceReader {
+
+    /** User equivalent range error in meters, used to turn the HDOP into an accuracy. */
+    public static final float UERE = 5f;
+    private static final float KNOTS_TO_METERS_PER_SECOND = 0.514444f;
+
+    private final BufferedReader reader;
+    private final int provider;
+
+    // RMC fix waiting for the GGA of the same time
+    private final LocationSample pending = new LocationSample();
+    private boolean hasPending = false;
+    private String pendingTime = null;
+    private String lastGgaTime = null;
+    private float lastHdop;
+
+    /**
+     * Reader of a GPS trace.
+     *
+     * @param reader , the NMEA text.
+     */
+    public NmeaTraceReader(Reader reader) {
+        this(reader, LocationSample.PROVIDER_GPS);
+    }
+
+    /**
+     *
+     * @param reader , the NMEA text.
+     * @param provider , the LocationSample provider id given to the fixes.
+     */
+    public NmeaTraceReader(Reader reader, int provider) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.provider = provider;
+    }
+
+    @Override
+    public boolean read(LocationSample sample) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = split(line.trim());
+            if (fields == null || fields.length < 2 || fields[0].length() < 3) {
+                continue;
+            }
+            String type = fields[0].substring(fields[0].length() - 3);
+            if (!"RMC".equals(type) && !"GGA".equals(type)) {
+                continue;
+            }
+            boolean ready = false;
+            if (hasPending && !fields[1].equals(pendingTime)) {
+                // a new epoch starts, the pending fix is complete
+                sample.copyFrom(pending);
+                hasPending = false;
+                ready = true;
+            }
+            try {
+                if ("RMC".equals(type)) {
+                    readRmc(fields);
+                } else if ("GGA".equals(type)) {
+                    readGga(fields);
+                }
+            } catch (NumberFormatException e) {
+                // malformed sentence, skipped as a wrong checksum
+            }
+            if (ready) {
+                return true;
+            }
+        }
+        if (hasPending) {
+            sample.copyFrom(pending);
+            hasPending = false;
+            return true;
+        }
+        return false;
+    }
+
+    private void readRmc(String[] fields) {
+        if (fields.length < 10 || !"A".equals(fields[2]) || fields[1].length() < 6 || fields[9].length() != 6) {
+            return;
+        }
+        String time = fields[1];
+        String date = fields[9];
+        int millis = 0;
+        if (time.length() > 7 && time.charAt(6) == '.') {
+            millis = Math.round(Float.parseFloat(time.substring(6)) * 1000);
+        }
+        long epochMillis = TraceTime.toEpochMillis(
+                2000 + Integer.parseInt(date.substring(4, 6)),
+                Integer.parseInt(date.substring(2, 4)),
+                Integer.parseInt(date.substring(0, 2)),
+                Integer.parseInt(time.substring(0, 2)),
+                Integer.parseInt(time.substring(2, 4)),
+                Integer.parseInt(time.substring(4, 6)),
+                millis);
+        float speed = fields[7].isEmpty() ? 0f : Float.parseFloat(fields[7]) * KNOTS_TO_METERS_PER_SECOND;
+        boolean hasAccuracy = time.equals(lastGgaTime);
+        pending.set(coordinate(fields[3], fields[4]), coordinate(fields[5], fields[6]),
+                hasAccuracy ? lastHdop * UERE : 0f, hasAccuracy, speed, epochMillis, provider);
+        pendingTime = time;
+        hasPending = true;
+    }
+
+    private void readGga(String[] fields) {
+        if (fields.length < 9 || fields[8].isEmpty()) {
+            return;
+        }
+        lastGgaTime = fields[1];
+        lastHdop = Float.parseFloat(fields[8]);
+        if (hasPending && lastGgaTime.equals(pendingTime)) {
+            pending.accuracy = lastHdop * UERE;
+            pending.hasAccuracy = true;
+        }
+    }
+
+    /**
+     * @param value , ddmm.mmmm or dddmm.mmmm.
+     * @param hemisphere , N, S, E or W.
+     * @return the coordinate in degrees.
+     */
+    static double coordinate(String value, String hemisphere) {
+        double raw = Double.parseDouble(value);
+        double degrees = Math.floor(raw / 100);
+        double result = degrees + (raw - degrees * 100) / 60;
+        return "S".equals(hemisphere) || "W".equals(hemisphere) ? -result : result;
+    }
+
+    /**
+     * @return the fields of the sentence, the address first, or null if the sentence is invalid.
+     */
+    static String[] split(String sentence) {
+        if (sentence.isEmpty() || sentence.charAt(0) != '$') {
+            return null;
+        }
+        int star = sentence.indexOf('*');
+        int end = star < 0 ? sentence.length() : star;
+        if (star >= 0) {
+            int checksum = 0;
+            for (int i = 1; i < star; i++) {
+                checksum ^= sentence.charAt(i);
+            }
+            try {
+                if (Integer.parseInt(sentence.substring(star + 1).trim(), 16) != checksum) {
+                    return null;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return sentence.substring(1, end).split(",", -1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,127 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Cumulative distance, moving time and speeds of the accepted locations, see
+ * {@link LocationDroid#setOdometer(Odometer)}.
+ *
+ * A segment is only counted once a location is further than its accuracy from the last counted
+ * location, so the jitter of the fixes of a parked device does not add distance, and only when
+ * its speed is above the minimum moving speed: its distance and its time are then added, so the
+ * average speed is not inflated by a slow drift. Updating never allocates. Updated by the thread
+ * receiving the location updates, readable and resettable from any thread.
+ */
+public final class Odometer {
+
+    // ==========================================================
+    // Constants
+    // ==========================================================
+    static final float DEFAULT_MIN_MOVING_SPEED = 0.5f;
+
+    private final float minMovingSpeed;
+    private final Geodesy.Equirectangular geodesy = new Geodesy.Equirectangular();
+
+    // last counted location
+    private boolean hasLast = false;
+    private double lastLatitude;
+    private double lastLongitude;
+    private long lastTime;
+
+    private volatile double distance = 0d;
+    private volatile long movingTime = 0;
+    private volatile float currentSpeed = 0f;
+    private volatile float maxSpeed = 0f;
+
+    public Odometer() {
+        this(DEFAULT_MIN_MOVING_SPEED);
+    }
+
+    /**
+     *
+     * @param minMovingSpeed , the speed in meters/second below which the time of a segment is
+     *                       not moving time. Default = 0.5.
+     */
+    public Odometer(float minMovingSpeed) {
+        this.minMovingSpeed = minMovingSpeed;
+    }
+
+    /**
+     * Add the segment from the last counted location to the new one.
+     *
+     * @param sample , the new location, its time in milliseconds.
+     */
+    public synchronized void update(LocationSample sample) {
+        if (hasLast) {
+            if (sample.time <= lastTime) {
+                return;
+            }
+            long elapsed = sample.time - lastTime;
+            double segment = geodesy.distance(lastLatitude, lastLongitude, sample.latitude, sample.longitude);
+            float speed = (float) (segment * 1000d / elapsed);
+            if (segment <= (sample.hasAccuracy ? sample.accuracy : 0f)) {
+                // within the error of the fix, the segment may still grow
+                currentSpeed = speed < minMovingSpeed ? 0f : speed;
+                return;
+            }
+            if (speed >= minMovingSpeed) {
+                distance += segment;
+                movingTime += elapsed;
+                currentSpeed = speed;
+                if (speed > maxSpeed) {
+                    maxSpeed = speed;
+                }
+            } else {
+                currentSpeed = 0f;
+            }
+        }
+        hasLast = true;
+        lastLatitude = sample.latitude;
+        lastLongitude = sample.longitude;
+        lastTime = sample.time;
+    }
+
+    /**
+     * @return the distance in meters of the moving segments.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return the moving time in milliseconds.
+     */
+    public long getMovingTime() {
+        return movingTime;
+    }
+
+    /**
+     * @return the average moving speed in meters/second.
+     */
+    public synchronized float getAverageSpeed() {
+        return movingTime == 0 ? 0f : (float) (distance * 1000d / movingTime);
+    }
+
+    /**
+     * @return the speed in meters/second of the last segment, 0 if it was not moving.
+     */
+    public float getCurrentSpeed() {
+        return currentSpeed;
+    }
+
+    /**
+     * @return the maximum speed in meters/second of a segment.
+     */
+    public float getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    /**
+     * Reset the counters to 0, the next location starts a new trip.
+     */
+    public synchronized void reset() {
+        hasLast = false;
+        distance = 0d;
+        movingTime = 0;
+        currentSpeed = 0f;
+        maxSpeed = 0f;
+    }
+}
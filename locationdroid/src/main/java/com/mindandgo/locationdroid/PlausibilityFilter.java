@@ -0,0 +1,168 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Rejects the fixes implying an impossible movement, like a network fix jumping 2 km in one
+ * second.
+ *
+ * The recent accepted fixes are kept in a small rolling window of primitive arrays. A new fix is
+ * compared to each of them: the distance is first reduced by the accuracies of both fixes, so
+ * only the movement which cannot be explained by the errors counts, then the implied speed and
+ * the implied acceleration from the speed of the last accepted fix must stay below the limits.
+ *
+ * After a run of rejected fixes the window is restarted from the new fix: the device may have
+ * really moved while no fix was received, in a tunnel for instance. Not thread-safe, use it from
+ * the thread receiving the location updates.
+ */
+public final class PlausibilityFilter {
+
+    // ==========================================================
+    // Constants
+    // ==========================================================
+    static final int DEFAULT_WINDOW_SIZE = 4;
+    // 250 km/h
+    static final float DEFAULT_MAX_SPEED = 70f;
+    static final float DEFAULT_MAX_ACCELERATION = 10f;
+    static final int DEFAULT_MAX_REJECTIONS = 5;
+
+    private final float maxSpeed;
+    private final float maxAcceleration;
+    private final int maxRejections;
+    private final Geodesy.Equirectangular geodesy = new Geodesy.Equirectangular();
+
+    // Rolling window of the accepted fixes
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] accuracies;
+    private final long[] times;
+    // index of the newest fix
+    private int newest = -1;
+    private int size = 0;
+    private float lastSpeed = 0f;
+
+    private int consecutiveRejections = 0;
+    private long rejectedCount = 0;
+
+    public PlausibilityFilter() {
+        this(DEFAULT_WINDOW_SIZE, DEFAULT_MAX_SPEED, DEFAULT_MAX_ACCELERATION, DEFAULT_MAX_REJECTIONS);
+    }
+
+    /**
+     *
+     * @param windowSize , the number of recent accepted fixes a new fix is compared to. Default = 4.
+     * @param maxSpeed , the maximum speed in meters/second. Default = 70 (250 km/h).
+     * @param maxAcceleration , the maximum acceleration in meters/second squared, 0 to not check it.
+     *                        Default = 10.
+     * @param maxRejections , the number of consecutive implausible fixes after which the window is
+     *                      restarted from the last one, which is accepted. Default = 5.
+     */
+    public PlausibilityFilter(int windowSize, float maxSpeed, float maxAcceleration, int maxRejections) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size cannot be lower than 1");
+        }
+        if (maxSpeed <= 0) {
+            throw new IllegalArgumentException("Max speed cannot be lower than 0");
+        }
+        this.maxSpeed = maxSpeed;
+        this.maxAcceleration = maxAcceleration;
+        this.maxRejections = maxRejections;
+        this.latitudes = new double[windowSize];
+        this.longitudes = new double[windowSize];
+        this.accuracies = new float[windowSize];
+        this.times = new long[windowSize];
+    }
+
+    // ==========================================================
+    // Filter
+    // ==========================================================
+
+    /**
+     * Check a new fix and, if it is plausible, add it to the window.
+     *
+     * @param sample , the new fix, its time in milliseconds.
+     * @return false if the fix implies an impossible movement, it is then counted as rejected.
+     * The last fix of a run of implausible fixes is accepted.
+     */
+    public boolean offer(LocationSample sample) {
+        if (!isPlausible(sample)) {
+            if (++consecutiveRejections < maxRejections) {
+                rejectedCount++;
+                return false;
+            }
+            // the window is probably the outlier, or the device moved without fix
+            reset();
+        }
+        add(sample);
+        return true;
+    }
+
+    /**
+     * Same rules as {@link #offer(LocationSample)} without modifying the window.
+     *
+     * @param sample , the new fix, its time in milliseconds.
+     * @return true if the fix is plausible.
+     */
+    public boolean isPlausible(LocationSample sample) {
+        for (int i = 0, index = newest; i < size; i++) {
+            long elapsed = sample.time - times[index];
+            double distance = geodesy.distance(latitudes[index], longitudes[index], sample.latitude, sample.longitude);
+            // the movement not explained by the accuracies
+            double movement = Math.max(0d, distance - accuracies[index] - accuracy(sample));
+            if (elapsed <= 0) {
+                if (movement > 0) {
+                    return false;
+                }
+            } else {
+                float speed = (float) (movement * 1000d / elapsed);
+                if (speed > maxSpeed) {
+                    return false;
+                }
+                // only a speed increase is checked, a jump never looks like a braking
+                if (i == 0 && maxAcceleration > 0 && size > 1
+                        && (speed - lastSpeed) * 1000f / elapsed > maxAcceleration) {
+                    return false;
+                }
+            }
+            index = index == 0 ? times.length - 1 : index - 1;
+        }
+        return true;
+    }
+
+    private void add(LocationSample sample) {
+        if (size > 0) {
+            long elapsed = sample.time - times[newest];
+            double distance = geodesy.distance(latitudes[newest], longitudes[newest], sample.latitude, sample.longitude);
+            double movement = Math.max(0d, distance - accuracies[newest] - accuracy(sample));
+            lastSpeed = elapsed <= 0 ? lastSpeed : (float) (movement * 1000d / elapsed);
+        }
+        newest = newest + 1 == times.length ? 0 : newest + 1;
+        latitudes[newest] = sample.latitude;
+        longitudes[newest] = sample.longitude;
+        accuracies[newest] = accuracy(sample);
+        times[newest] = sample.time;
+        if (size < times.length) {
+            size++;
+        }
+        consecutiveRejections = 0;
+    }
+
+    private static float accuracy(LocationSample sample) {
+        return sample.hasAccuracy ? sample.accuracy : 0f;
+    }
+
+    /**
+     * Forget the window, the next fix is always plausible.
+     */
+    public void reset() {
+        newest = -1;
+        size = 0;
+        lastSpeed = 0f;
+        consecutiveRejections = 0;
+    }
+
+    /**
+     * @return the number of rejected fixes since the creation.
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+}
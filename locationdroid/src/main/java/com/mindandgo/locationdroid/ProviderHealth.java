@@ -0,0 +1,266 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Health statistics of the providers, and suspension of the providers wasting fixes.
+ *
+ * For each provider it records the time to first fix, the fix rate, the accuracy distribution
+ * and how often its fixes are selected. A provider whose fixes are almost never selected (the
+ * GPS indoors for instance) is suspended, then probed again after a backoff doubling at each
+ * new suspension. A provider is never suspended if it is the last one running.
+ *
+ * The providers are identified by the LocationSample provider ids. Not thread-safe, use it from
+ * the thread receiving the location updates.
+ */
+public final class ProviderHealth {
+
+    // upper bounds in meters of the accuracy histogram buckets, the last bucket has no bound
+    private static final float[] ACCURACY_BUCKETS = {5f, 10f, 20f, 50f, 100f, 200f};
+    /** Number of buckets of the accuracy histogram. */
+    public static final int ACCURACY_BUCKET_COUNT = ACCURACY_BUCKETS.length + 1;
+
+    // ==========================================================
+    // Constants
+    // ==========================================================
+    static final int DEFAULT_MIN_FIXES = 20;
+    static final float DEFAULT_MIN_SELECTION_RATIO = 0.05f;
+    static final long DEFAULT_INITIAL_BACKOFF = 60000L;
+    static final long DEFAULT_MAX_BACKOFF = 1800000L;
+
+    private static final int COUNT = LocationSample.PROVIDER_COUNT;
+
+    private final int minFixes;
+    private final float minSelectionRatio;
+    private final long initialBackoff;
+    private final long maxBackoff;
+
+    // Statistics
+    private final boolean[] registered = new boolean[COUNT];
+    private final long[] registrationTime = new long[COUNT];
+    private final boolean[] waitingFirstFix = new boolean[COUNT];
+    private final long[] timeToFirstFix = new long[COUNT];
+    private final long[] registeredDuration = new long[COUNT];
+    private final long[] fixCount = new long[COUNT];
+    private final long[] selectedCount = new long[COUNT];
+    private final long[][] accuracyHistogram = new long[COUNT][ACCURACY_BUCKET_COUNT];
+
+    // Suspension
+    private final int[] windowFixes = new int[COUNT];
+    private final int[] windowSelected = new int[COUNT];
+    private final boolean[] suspended = new boolean[COUNT];
+    private final long[] resumeTime = new long[COUNT];
+    private final long[] backoff = new long[COUNT];
+
+    public ProviderHealth() {
+        this(DEFAULT_MIN_FIXES, DEFAULT_MIN_SELECTION_RATIO, DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     *
+     * @param minFixes , the number of fixes of a provider before its selection ratio is evaluated.
+     *                 Default = 20.
+     * @param minSelectionRatio , the ratio of selected fixes below which a provider is suspended.
+     *                          Default = 0.05.
+     * @param initialBackoff , the first suspension time in milliseconds. Default = 1 minute.
+     * @param maxBackoff , the maximum suspension time in milliseconds. Default = 30 minutes.
+     */
+    public ProviderHealth(int minFixes, float minSelectionRatio, long initialBackoff, long maxBackoff) {
+        if (minFixes < 1) {
+            throw new IllegalArgumentException("Min fixes cannot be lower than 1");
+        }
+        this.minFixes = minFixes;
+        this.minSelectionRatio = minSelectionRatio;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        for (int i = 0; i < COUNT; i++) {
+            backoff[i] = initialBackoff;
+        }
+    }
+
+    // ==========================================================
+    // Events
+    // ==========================================================
+
+    /**
+     * @param provider , the provider registered for updates.
+     * @param time , the time in milliseconds.
+     */
+    public void onRegistered(int provider, long time) {
+        if (!isValid(provider) || registered[provider]) {
+            return;
+        }
+        registered[provider] = true;
+        registrationTime[provider] = time;
+        waitingFirstFix[provider] = true;
+    }
+
+    /**
+     * @param provider , the provider unregistered.
+     * @param time , the time in milliseconds.
+     */
+    public void onUnregistered(int provider, long time) {
+        if (!isValid(provider) || !registered[provider]) {
+            return;
+        }
+        registered[provider] = false;
+        registeredDuration[provider] += time - registrationTime[provider];
+    }
+
+    /**
+     * @param provider , the provider of the fix.
+     * @param accuracy , the accuracy of the fix in meters.
+     * @param selected , true if the fix has been selected as the new best location.
+     * @param time , the time in milliseconds.
+     */
+    public void onFix(int provider, float accuracy, boolean selected, long time) {
+        if (!isValid(provider)) {
+            return;
+        }
+        if (waitingFirstFix[provider]) {
+            waitingFirstFix[provider] = false;
+            timeToFirstFix[provider] = time - registrationTime[provider];
+        }
+        fixCount[provider]++;
+        windowFixes[provider]++;
+        if (selected) {
+            selectedCount[provider]++;
+            windowSelected[provider]++;
+        }
+        int bucket = 0;
+        while (bucket < ACCURACY_BUCKETS.length && accuracy > ACCURACY_BUCKETS[bucket]) {
+            bucket++;
+        }
+        accuracyHistogram[provider][bucket]++;
+    }
+
+    /**
+     * Suspend the wasteful providers and resume the ones at the end of their backoff.
+     *
+     * @param time , the time in milliseconds.
+     * @return true if a provider has been suspended or resumed, its registration must change.
+     */
+    public boolean update(long time) {
+        boolean changed = false;
+        for (int provider = 0; provider < COUNT; provider++) {
+            if (suspended[provider]) {
+                if (time >= resumeTime[provider]) {
+                    // probe the provider again
+                    suspended[provider] = false;
+                    resetWindow(provider);
+                    changed = true;
+                }
+            } else if (registered[provider] && windowFixes[provider] >= minFixes) {
+                float ratio = (float) windowSelected[provider] / windowFixes[provider];
+                if (ratio < minSelectionRatio && activeCount() > 1) {
+                    suspended[provider] = true;
+                    resumeTime[provider] = time + backoff[provider];
+                    backoff[provider] = Math.min(backoff[provider] * 2, maxBackoff);
+                    changed = true;
+                } else if (ratio >= minSelectionRatio) {
+                    backoff[provider] = initialBackoff;
+                }
+                resetWindow(provider);
+            }
+        }
+        return changed;
+    }
+
+    private void resetWindow(int provider) {
+        windowFixes[provider] = 0;
+        windowSelected[provider] = 0;
+    }
+
+    private int activeCount() {
+        int count = 0;
+        for (int provider = 0; provider < COUNT; provider++) {
+            if (registered[provider] && !suspended[provider]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the time in milliseconds at which the first suspended provider is resumed by
+     * {@link #update(long)}, -1 if no provider is suspended.
+     */
+    public long getNextResumeTime() {
+        long next = -1L;
+        for (int provider = 0; provider < COUNT; provider++) {
+            if (suspended[provider] && (next < 0 || resumeTime[provider] < next)) {
+                next = resumeTime[provider];
+            }
+        }
+        return next;
+    }
+
+    private static boolean isValid(int provider) {
+        return provider >= 0 && provider < COUNT;
+    }
+
+    // ==========================================================
+    // Statistics
+    // ==========================================================
+
+    /**
+     * @return true if the provider is suspended and must not be registered.
+     */
+    public boolean isSuspended(int provider) {
+        return isValid(provider) && suspended[provider];
+    }
+
+    /**
+     * @return the time in milliseconds between the last registration and the first fix that
+     * followed, -1 if unknown.
+     */
+    public long getTimeToFirstFix(int provider) {
+        return isValid(provider) && fixCount[provider] > 0 && !waitingFirstFix[provider] ? timeToFirstFix[provider] : -1L;
+    }
+
+    public long getFixCount(int provider) {
+        return isValid(provider) ? fixCount[provider] : 0L;
+    }
+
+    /**
+     * @return the number of fixes of the provider selected as the new best location.
+     */
+    public long getSelectedCount(int provider) {
+        return isValid(provider) ? selectedCount[provider] : 0L;
+    }
+
+    /**
+     * @param time , the current time in milliseconds.
+     * @return the number of fixes per minute while the provider was registered.
+     */
+    public float getFixRate(int provider, long time) {
+        if (!isValid(provider)) {
+            return 0f;
+        }
+        long duration = registeredDuration[provider];
+        if (registered[provider]) {
+            duration += time - registrationTime[provider];
+        }
+        return duration <= 0 ? 0f : fixCount[provider] * 60000f / duration;
+    }
+
+    /**
+     * @return the upper bounds in meters of the accuracy histogram buckets, the last bucket having
+     * no bound. A new copy at each call.
+     */
+    public static float[] getAccuracyBuckets() {
+        return ACCURACY_BUCKETS.clone();
+    }
+
+    /**
+     * @param provider , the provider.
+     * @param histogram , filled with the number of fixes for each bucket of
+     *                  {@link #getAccuracyBuckets()}, plus one last bucket for the larger
+     *                  accuracies: {@link #ACCURACY_BUCKET_COUNT} values.
+     * @return the histogram.
+     */
+    public long[] getAccuracyHistogram(int provider, long[] histogram) {
+        if (isValid(provider)) {
+            System.arraycopy(accuracyHistogram[provider], 0, histogram, 0, accuracyHistogram[provider].length);
+        }
+        return histogram;
+    }
+}
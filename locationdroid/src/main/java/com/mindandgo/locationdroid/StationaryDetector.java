@@ -0,0 +1,102 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Detects when the device stays at the same place.
+ *
+ * The accepted fixes are compared to an anchor, the first fix of the current place. A fix has
+ * moved away when its distance to the anchor is larger than its accuracy plus the movement
+ * threshold: the inaccurate network and passive fixes must move further. The device becomes
+ * stationary when no fix moved away during the stationary time, and moving again at the first
+ * fix moving away.
+ *
+ * Not thread-safe, use it from the thread receiving the location updates.
+ */
+public final class StationaryDetector {
+
+    // ==========================================================
+    // Constants
+    // ==========================================================
+    static final float DEFAULT_MOVEMENT_THRESHOLD = 50f;
+    static final long DEFAULT_STATIONARY_TIME = 120000L;
+
+    private final float movementThreshold;
+    private final long stationaryTime;
+    private final Geodesy.Equirectangular geodesy = new Geodesy.Equirectangular();
+
+    private boolean hasAnchor = false;
+    private double anchorLatitude;
+    private double anchorLongitude;
+    private long anchorTime;
+    private boolean stationary = false;
+
+    public StationaryDetector() {
+        this(DEFAULT_MOVEMENT_THRESHOLD, DEFAULT_STATIONARY_TIME);
+    }
+
+    /**
+     *
+     * @param movementThreshold , the distance in meters beyond the accuracy of a fix to consider
+     *                          the device has moved. Default = 50.
+     * @param stationaryTime , the time in milliseconds without movement before the device is
+     *                       stationary. Default = 2 minutes.
+     */
+    public StationaryDetector(float movementThreshold, long stationaryTime) {
+        if (movementThreshold < 0) {
+            throw new IllegalArgumentException("Movement threshold cannot be lower than 0");
+        }
+        this.movementThreshold = movementThreshold;
+        this.stationaryTime = stationaryTime;
+    }
+
+    /**
+     * Update the state with a new accepted fix.
+     *
+     * @param sample , the fix, its time in milliseconds.
+     * @return true if the device became stationary or moving.
+     */
+    public boolean update(LocationSample sample) {
+        if (!hasAnchor || hasMoved(sample)) {
+            setAnchor(sample);
+            if (stationary) {
+                stationary = false;
+                return true;
+            }
+            return false;
+        }
+        if (!stationary && sample.time - anchorTime >= stationaryTime) {
+            stationary = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the fix is away from the current place.
+     */
+    public boolean hasMoved(LocationSample sample) {
+        if (!hasAnchor) {
+            return false;
+        }
+        double distance = geodesy.distance(anchorLatitude, anchorLongitude, sample.latitude, sample.longitude);
+        return distance > movementThreshold + (sample.hasAccuracy ? sample.accuracy : 0f);
+    }
+
+    private void setAnchor(LocationSample sample) {
+        anchorLatitude = sample.latitude;
+        anchorLongitude = sample.longitude;
+        anchorTime = sample.time;
+        hasAnchor = true;
+    }
+
+    public boolean isStationary() {
+        return stationary;
+    }
+
+    /**
+     * Forget the current place, the device is moving.
+     */
+    public void reset() {
+        hasAnchor = false;
+        stationary = false;
+    }
+}
@@ -0,0 +1,19 @@
+package com.mindandgo.locationdroid;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sequential reader of the fixes of a recorded trace, see {@link TraceReplay}.
+ */
+public interface TraceReader extends Closeable {
+
+    /**
+     * Read the next fix of the trace.
+     *
+     * @param sample , the sample to fill, its time in milliseconds since the epoch.
+     * @return false at the end of the trace, the sample is then unchanged.
+     * @throws IOException if the trace cannot be read or is malformed.
+     */
+    boolean read(LocationSample sample) throws IOException;
+}
@@ -0,0 +1,312 @@
+package com.mindandgo.locationdroid;
+
+import java.io.IOException;
+
+/**
+ * Deterministic replay of recorded traces through the location selection, off-device.
+ *
+ * The fixes of one or more {@link TraceReader}, one per provider for instance, are merged by time
+ * and fed to the same {@link LocationPipeline} as {@link LocationDroid}, the registration of the
+ * providers being simulated: the fixes of the providers {@link LocationDroid} would not register
+ * are dropped. The clock is virtual: it is the time of the last fix, so a replay
+ * gives the same result at any speed. By default the fixes are replayed as fast as possible,
+ * {@link #setSpeedFactor(float)} replays them in real time.
+ *
+ * Not thread-safe, a replay runs on the calling thread.
+ */
+public final class TraceReplay {
+
+    /**
+     * Receives the accepted fixes of a replay.
+     */
+    public interface Listener {
+
+        /**
+         * @param sample , the accepted fix, or the fused estimate. Reused after the call.
+         */
+        void onAccepted(LocationSample sample);
+    }
+
+    private final LocationPipeline pipeline;
+    private Listener listener = null;
+    private float speedFactor = 0f;
+
+    private final LocationSample sample = new LocationSample();
+    private final boolean[] registered = new boolean[LocationSample.PROVIDER_COUNT];
+    private long time = 0;
+
+    /**
+     *
+     * @param selector , the selector deciding which fixes are accepted.
+     */
+    public TraceReplay(LocationSelector selector) {
+        this.pipeline = new LocationPipeline(selector);
+    }
+
+    // ==========================================================
+    // Replay
+    // ==========================================================
+
+    /**
+     * Replay the traces, merged by time. The readers are read to their end but not closed.
+     *
+     * @param readers , the traces.
+     * @return the statistics of the replay.
+     * @throws IOException if a trace cannot be read.
+     * @throws InterruptedException if the thread is interrupted while waiting in real time.
+     */
+    public Result replay(TraceReader... readers) throws IOException, InterruptedException {
+        Result result = new Result();
+        LocationSample[] heads = new LocationSample[readers.length];
+        for (int i = 0; i < readers.length; i++) {
+            heads[i] = new LocationSample();
+            if (!readers[i].read(heads[i])) {
+                heads[i] = null;
+            }
+        }
+        long start = System.nanoTime();
+        boolean first = true;
+        int next;
+        while ((next = nextReader(heads)) >= 0) {
+            sample.copyFrom(heads[next]);
+            if (!readers[next].read(heads[next])) {
+                heads[next] = null;
+            }
+            if (speedFactor > 0 && !first && sample.time > time) {
+                Thread.sleep((long) ((sample.time - time) / speedFactor));
+            }
+            if (first) {
+                result.firstTime = sample.time;
+                first = false;
+            }
+            time = Math.max(time, sample.time);
+            offer(sample, result);
+        }
+        result.lastTime = time;
+        result.duration = System.nanoTime() - start;
+        return result;
+    }
+
+    private static int nextReader(LocationSample[] heads) {
+        int next = -1;
+        for (int i = 0; i < heads.length; i++) {
+            if (heads[i] != null && (next < 0 || heads[i].time < heads[next].time)) {
+                next = i;
+            }
+        }
+        return next;
+    }
+
+    private void offer(LocationSample fix, Result result) {
+        int provider = fix.provider;
+        // the suspended providers are resumed at the end of their backoff, fix or not
+        pipeline.updateProviderHealth(time);
+        if (pipeline.isStationary() && provider != LocationSample.PROVIDER_PASSIVE) {
+            // only the passive provider would be registered
+            result.stationaryCount++;
+            return;
+        }
+        ProviderHealth providerHealth = pipeline.getProviderHealth();
+        if (providerHealth != null && provider >= 0 && provider < LocationSample.PROVIDER_COUNT) {
+            if (providerHealth.isSuspended(provider)) {
+                // the provider would not be registered
+                if (registered[provider]) {
+                    registered[provider] = false;
+                    providerHealth.onUnregistered(provider, time);
+                }
+                result.suspendedCount++;
+                return;
+            }
+            if (!registered[provider]) {
+                registered[provider] = true;
+                providerHealth.onRegistered(provider, time);
+            }
+        }
+        result.fixCount++;
+        result.providerCounts[LocationCounters.slot(provider)]++;
+
+        boolean delivered = pipeline.offer(fix, time);
+        int decision = pipeline.getDecision();
+        result.decisionCounts[decision]++;
+        if (!delivered) {
+            if (LocationSelector.isAcceptedDecision(decision)) {
+                // same place, not delivered
+                result.duplicateCount++;
+            }
+            return;
+        }
+        if (listener != null) {
+            listener.onAccepted(fix);
+        }
+    }
+
+    /**
+     * @return the virtual time: the time of the last replayed fix.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    // ==========================================================
+    // Setters -- Options
+    // ==========================================================
+
+    /**
+     * @param fusionFilter , the filter fusing every fix instead of the selection, null to use the
+     *                     selection. Default = null.
+     */
+    public TraceReplay setFusionFilter(LocationKalmanFilter fusionFilter) {
+        pipeline.setFusionFilter(fusionFilter);
+        return this;
+    }
+
+    /**
+     * @param plausibilityFilter , the filter rejecting the impossible movements, null to not
+     *                           check them. Default = null.
+     */
+    public TraceReplay setPlausibilityFilter(PlausibilityFilter plausibilityFilter) {
+        pipeline.setPlausibilityFilter(plausibilityFilter);
+        return this;
+    }
+
+    /**
+     * @param stationaryDetector , the detector, the GPS and network fixes being dropped while the
+     *                           device is stationary. Default = null.
+     */
+    public TraceReplay setStationaryDetector(StationaryDetector stationaryDetector) {
+        pipeline.setStationaryDetector(stationaryDetector);
+        return this;
+    }
+
+    /**
+     * @param providerHealth , the provider health, the fixes of the suspended providers being
+     *                       dropped. Default = null.
+     */
+    public TraceReplay setProviderHealth(ProviderHealth providerHealth) {
+        pipeline.setProviderHealth(providerHealth);
+        return this;
+    }
+
+    /**
+     * @param metrics , the metrics receiving the decisions, null to disable them. Default = disabled.
+     */
+    public TraceReplay setMetrics(LocationMetrics metrics) {
+        pipeline.setMetrics(metrics);
+        return this;
+    }
+
+    public TraceReplay setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * @param speedFactor , 1 to replay in real time, 10 ten times faster, 0 as fast as possible.
+     *                    Default = 0.
+     */
+    public TraceReplay setSpeedFactor(float speedFactor) {
+        if (speedFactor < 0) {
+            throw new IllegalArgumentException("Speed factor cannot be lower than 0");
+        }
+        this.speedFactor = speedFactor;
+        return this;
+    }
+
+    /**
+     * Statistics of a replay.
+     */
+    public static final class Result {
+
+        private long fixCount = 0;
+        private long suspendedCount = 0;
+        private long stationaryCount = 0;
+        private long duplicateCount = 0;
+        private final long[] providerCounts = new long[LocationCounters.PROVIDER_SLOTS];
+        private final long[] decisionCounts = new long[LocationSelector.DECISION_COUNT];
+        private long firstTime = 0;
+        private long lastTime = 0;
+        private long duration = 0;
+
+        private Result() {
+        }
+
+        /**
+         * @return the number of fixes offered, the fixes of the suspended providers and the
+         * GPS and network fixes while stationary excluded.
+         */
+        public long getFixCount() {
+            return fixCount;
+        }
+
+        /**
+         * @return the number of fixes dropped because their provider was suspended.
+         */
+        public long getSuspendedCount() {
+            return suspendedCount;
+        }
+
+        /**
+         * @return the number of GPS and network fixes dropped because the device was stationary.
+         */
+        public long getStationaryCount() {
+            return stationaryCount;
+        }
+
+        /**
+         * @return the number of accepted fixes not delivered because the device was still stationary.
+         */
+        public long getDuplicateCount() {
+            return duplicateCount;
+        }
+
+        /**
+         * @param provider , the LocationSample provider id, PROVIDER_UNKNOWN included.
+         */
+        public long getFixCount(int provider) {
+            return providerCounts[LocationCounters.slot(provider)];
+        }
+
+        /**
+         * @param decision , one of the LocationSelector decisions.
+         */
+        public long getDecisionCount(int decision) {
+            return decisionCounts[decision];
+        }
+
+        public long getAcceptedCount() {
+            return fixCount - decisionCounts[LocationSelector.REJECTED]
+                    - decisionCounts[LocationSelector.REJECTED_IMPLAUSIBLE];
+        }
+
+        /**
+         * @return the time in milliseconds between the first and the last fix of the traces.
+         */
+        public long getTraceDuration() {
+            return lastTime - firstTime;
+        }
+
+        /**
+         * @return the wall time of the replay in nanoseconds.
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return the number of fixes replayed per second of wall time.
+         */
+        public double getThroughput() {
+            return duration <= 0 ? 0d : fixCount * 1e9d / duration;
+        }
+
+        @Override
+        public String toString() {
+            return "fixes: " + fixCount + ", accepted: " + getAcceptedCount()
+                    + ", suspended: " + suspendedCount
+                    + ", stationary: " + stationaryCount
+                    + ", trace: " + getTraceDuration() + " ms"
+                    + ", replay: " + duration / 1000000 + " ms"
+                    + ", throughput: " + (long) getThroughput() + " fixes/s";
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Time conversions of the trace formats, without Calendar nor SimpleDateFormat.
+ */
+final class TraceTime {
+
+    private TraceTime() {
+    }
+
+    /**
+     * @return the milliseconds since the epoch of a UTC date and time.
+     */
+    static long toEpochMillis(int year, int month, int day, int hour, int minute, int second, int millis) {
+        // days from civil, proleptic Gregorian calendar
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468L;
+        return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L + millis;
+    }
+
+    /**
+     * Parse an ISO 8601 date time: 2016-05-20T10:00:00Z, with optional fraction of second and
+     * optional time zone offset (UTC if missing).
+     *
+     * @param text , the date time.
+     * @return the milliseconds since the epoch.
+     * @throws NumberFormatException if the text is not a date time.
+     */
+    static long parseIso8601(String text) {
+        String value = text.trim();
+        if (value.length() < 19 || value.charAt(4) != '-' || value.charAt(7) != '-'
+                || value.charAt(10) != 'T' || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            throw new NumberFormatException("Invalid date time: " + text);
+        }
+        int year = Integer.parseInt(value.substring(0, 4));
+        int month = Integer.parseInt(value.substring(5, 7));
+        int day = Integer.parseInt(value.substring(8, 10));
+        int hour = Integer.parseInt(value.substring(11, 13));
+        int minute = Integer.parseInt(value.substring(14, 16));
+        int second = Integer.parseInt(value.substring(17, 19));
+
+        int index = 19;
+        int millis = 0;
+        if (index < value.length() && value.charAt(index) == '.') {
+            int start = ++index;
+            while (index < value.length() && Character.isDigit(value.charAt(index))) {
+                index++;
+            }
+            String fraction = (value.substring(start, index) + "000").substring(0, 3);
+            millis = Integer.parseInt(fraction);
+        }
+        long time = toEpochMillis(year, month, day, hour, minute, second, millis);
+
+        if (index < value.length() && value.charAt(index) != 'Z') {
+            char sign = value.charAt(index);
+            if ((sign != '+' && sign != '-') || value.length() < index + 6) {
+                throw new NumberFormatException("Invalid time zone: " + text);
+            }
+            int offset = Integer.parseInt(value.substring(index + 1, index + 3)) * 60
+                    + Integer.parseInt(value.substring(index + 4, index + 6));
+            time -= (sign == '+' ? offset : -offset) * 60000L;
+        }
+        return time;
+    }
+}
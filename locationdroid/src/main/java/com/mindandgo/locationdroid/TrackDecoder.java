@@ -0,0 +1,97 @@
+package com.mindandgo.locationdroid;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming decoding of a track written by {@link TrackEncoder}.
+ *
+ * Reads go byte by byte to the stream, wrap it in a BufferedInputStream.
+ */
+public final class TrackDecoder implements Closeable {
+
+    private final InputStream in;
+    private boolean headerRead = false;
+    private long lastLatitude;
+    private long lastLongitude;
+    private long lastAccuracy;
+    private long lastTime;
+    private long lastInterval;
+
+    /**
+     *
+     * @param in , the stream to read from.
+     */
+    public TrackDecoder(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Decode the next location. The speed is not encoded and the provider is unknown. An accuracy
+     * encoded as 0 was unknown: the sample has no accuracy.
+     *
+     * @param sample , the sample to fill.
+     * @return false at the end of the stream.
+     */
+    public boolean read(LocationSample sample) throws IOException {
+        if (!headerRead) {
+            int magic = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = in.read();
+                if (b < 0) {
+                    if (i == 0) {
+                        return false;
+                    }
+                    throw new EOFException("Truncated track header");
+                }
+                magic = (magic << 8) | b;
+            }
+            if (magic != TrackEncoder.MAGIC) {
+                throw new IOException("Not an encoded track");
+            }
+            headerRead = true;
+        }
+        int first = in.read();
+        if (first < 0) {
+            return false;
+        }
+        lastLatitude += readVarint(first);
+        lastLongitude += readVarint(in.read());
+        lastInterval += readVarint(in.read());
+        lastAccuracy += readVarint(in.read());
+        lastTime += lastInterval;
+
+        sample.set(lastLatitude / TrackEncoder.COORDINATE_SCALE, lastLongitude / TrackEncoder.COORDINATE_SCALE,
+                lastAccuracy / TrackEncoder.ACCURACY_SCALE, lastAccuracy != 0, 0f, lastTime,
+                LocationSample.PROVIDER_UNKNOWN);
+        return true;
+    }
+
+    private long readVarint(int first) throws IOException {
+        long zigZag = 0;
+        int shift = 0;
+        int b = first;
+        while (true) {
+            if (b < 0) {
+                throw new EOFException("Truncated track record");
+            }
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+            if (shift > 63) {
+                throw new IOException("Invalid track record");
+            }
+            b = in.read();
+        }
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
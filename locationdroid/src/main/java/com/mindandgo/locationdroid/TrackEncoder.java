@@ -0,0 +1,234 @@
+package com.mindandgo.locationdroid;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streaming compact encoding of a track, read back by {@link TrackDecoder}.
+ *
+ * The coordinates are quantised to 1e-6 degree (about 0.1 meter) and the accuracy to 0.1 meter,
+ * an unknown accuracy being encoded as 0. The speed and the provider are not encoded.
+ * Each location is written as zig-zag varints: the delta of the coordinates and the accuracy
+ * with the previous location, and the delta of the time interval, a single byte at a regular
+ * rate.
+ *
+ * With a tolerance, the track is also simplified on the fly with an opening window: a location
+ * is only written when the straight line from the last written location can no longer represent
+ * the locations received since within the tolerance. At most one window of locations is kept.
+ *
+ * Writes go byte by byte to the stream, wrap it in a BufferedOutputStream.
+ */
+public final class TrackEncoder implements Flushable, Closeable {
+
+    // ==========================================================
+    // Format
+    // ==========================================================
+    static final int MAGIC = 0x4C445431; // "LDT1"
+    static final double COORDINATE_SCALE = 1e6d;
+    static final float ACCURACY_SCALE = 10f;
+    // the smallest known accuracy, 0 meaning unknown
+    private static final float MIN_ACCURACY = 1f / ACCURACY_SCALE;
+
+    // ==========================================================
+    // Constants
+    // ==========================================================
+    static final int DEFAULT_WINDOW_SIZE = 64;
+
+    private final OutputStream out;
+    private final float tolerance;
+
+    // Locations received since the last written one, the first one being the last written one
+    private final double[] windowLatitudes;
+    private final double[] windowLongitudes;
+    private final float[] windowAccuracies;
+    private final long[] windowTimes;
+    private int windowSize = 0;
+
+    // Last written quantised values
+    private boolean headerWritten = false;
+    private long lastLatitude;
+    private long lastLongitude;
+    private long lastAccuracy;
+    private long lastTime;
+    private long lastInterval;
+
+    private long inputCount = 0;
+    private long outputCount = 0;
+
+    /**
+     * Encoder keeping every location.
+     *
+     * @param out , the stream to write to.
+     */
+    public TrackEncoder(OutputStream out) {
+        this(out, 0f, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     *
+     * @param out , the stream to write to.
+     * @param tolerance , the maximum distance in meters between a dropped location and the
+     *                  simplified track, 0 to keep every location.
+     * @param windowSize , the maximum number of locations waiting to be simplified,
+     *                   a location is written at least every windowSize - 1 locations. Default = 64.
+     */
+    public TrackEncoder(OutputStream out, float tolerance, int windowSize) {
+        if (windowSize < 3) {
+            throw new IllegalArgumentException("Window size cannot be lower than 3");
+        }
+        this.out = out;
+        this.tolerance = tolerance;
+        this.windowLatitudes = new double[windowSize];
+        this.windowLongitudes = new double[windowSize];
+        this.windowAccuracies = new float[windowSize];
+        this.windowTimes = new long[windowSize];
+    }
+
+    /**
+     * Encode a new location.
+     *
+     * @param sample , the location.
+     */
+    public void write(LocationSample sample) throws IOException {
+        inputCount++;
+        float accuracy = sample.hasAccuracy ? Math.max(sample.accuracy, MIN_ACCURACY) : 0f;
+        if (tolerance <= 0) {
+            writeLocation(sample.latitude, sample.longitude, accuracy, sample.time);
+            return;
+        }
+        if (windowSize == 0) {
+            writeLocation(sample.latitude, sample.longitude, accuracy, sample.time);
+            addToWindow(sample, accuracy);
+            return;
+        }
+        addToWindow(sample, accuracy);
+        if (windowSize == windowTimes.length || !fitsWindow()) {
+            // the previous location ends the simplified segment
+            int last = windowSize - 2;
+            writeLocation(windowLatitudes[last], windowLongitudes[last], windowAccuracies[last], windowTimes[last]);
+            restartWindow(last);
+        }
+    }
+
+    private void addToWindow(LocationSample sample, float accuracy) {
+        windowLatitudes[windowSize] = sample.latitude;
+        windowLongitudes[windowSize] = sample.longitude;
+        windowAccuracies[windowSize] = accuracy;
+        windowTimes[windowSize] = sample.time;
+        windowSize++;
+    }
+
+    private void restartWindow(int from) {
+        int count = windowSize - from;
+        System.arraycopy(windowLatitudes, from, windowLatitudes, 0, count);
+        System.arraycopy(windowLongitudes, from, windowLongitudes, 0, count);
+        System.arraycopy(windowAccuracies, from, windowAccuracies, 0, count);
+        System.arraycopy(windowTimes, from, windowTimes, 0, count);
+        windowSize = count;
+    }
+
+    /**
+     * @return true if all the locations of the window are within the tolerance of the line from
+     * the first one to the last one.
+     */
+    private boolean fitsWindow() {
+        int last = windowSize - 1;
+        double originLatitude = windowLatitudes[0];
+        double originLongitude = windowLongitudes[0];
+        double metersPerDegreeLongitude = Geodesy.METERS_PER_DEGREE * Math.cos(Math.toRadians(originLatitude));
+        double endX = (windowLongitudes[last] - originLongitude) * metersPerDegreeLongitude;
+        double endY = (windowLatitudes[last] - originLatitude) * Geodesy.METERS_PER_DEGREE;
+        double length2 = endX * endX + endY * endY;
+
+        for (int i = 1; i < last; i++) {
+            double x = (windowLongitudes[i] - originLongitude) * metersPerDegreeLongitude;
+            double y = (windowLatitudes[i] - originLatitude) * Geodesy.METERS_PER_DEGREE;
+            // distance to the segment, the projection being bounded to its ends
+            double t = length2 == 0 ? 0 : Math.max(0, Math.min(1, (x * endX + y * endY) / length2));
+            double dx = x - t * endX;
+            double dy = y - t * endY;
+            if (dx * dx + dy * dy > tolerance * tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeLocation(double latitude, double longitude, float accuracy, long time) throws IOException {
+        if (!headerWritten) {
+            out.write(MAGIC >>> 24);
+            out.write(MAGIC >>> 16);
+            out.write(MAGIC >>> 8);
+            out.write(MAGIC);
+            headerWritten = true;
+        }
+        long quantisedLatitude = Math.round(latitude * COORDINATE_SCALE);
+        long quantisedLongitude = Math.round(longitude * COORDINATE_SCALE);
+        long quantisedAccuracy = Math.round(accuracy * ACCURACY_SCALE);
+        long interval = time - lastTime;
+
+        writeVarint(out, quantisedLatitude - lastLatitude);
+        writeVarint(out, quantisedLongitude - lastLongitude);
+        writeVarint(out, interval - lastInterval);
+        writeVarint(out, quantisedAccuracy - lastAccuracy);
+
+        lastLatitude = quantisedLatitude;
+        lastLongitude = quantisedLongitude;
+        lastAccuracy = quantisedAccuracy;
+        lastInterval = interval;
+        lastTime = time;
+        outputCount++;
+    }
+
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        // zig-zag: small negative values give small unsigned values
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            out.write((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.write((int) zigZag);
+    }
+
+    /**
+     * Write the location waiting in the simplification window, so the encoded track ends with the
+     * last received location, then flush the stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (windowSize > 1) {
+            int last = windowSize - 1;
+            writeLocation(windowLatitudes[last], windowLongitudes[last], windowAccuracies[last], windowTimes[last]);
+            restartWindow(last);
+        }
+        out.flush();
+    }
+
+    /**
+     * Flush and close the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the number of locations given to the encoder.
+     */
+    public long getInputCount() {
+        return inputCount;
+    }
+
+    /**
+     * @return the number of locations written to the stream.
+     */
+    public long getOutputCount() {
+        return outputCount;
+    }
+}
@@ -0,0 +1,194 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Fixed capacity history of the accepted locations.
+ *
+ * The points are stored in preallocated primitive arrays, one per field, and the oldest point is
+ * overwritten when the recorder is full. A point takes 34 bytes: a 10 hours track at 1 Hz takes
+ * about 1.2 MB. Appending and reading through a {@link Cursor} never allocate.
+ *
+ * The recorder is not thread-safe, read it on the thread receiving the location updates.
+ */
+public final class TrackRecorder {
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] accuracies;
+    private final boolean[] hasAccuracies;
+    private final float[] speeds;
+    private final long[] times;
+    private final byte[] providers;
+    // index of the oldest point
+    private int head = 0;
+    private int size = 0;
+    private long appendCount = 0;
+
+    /**
+     *
+     * @param capacity , the maximum number of points, the oldest points are overwritten beyond.
+     */
+    public TrackRecorder(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Track capacity cannot be lower than 1");
+        }
+        this.latitudes = new double[capacity];
+        this.longitudes = new double[capacity];
+        this.accuracies = new float[capacity];
+        this.hasAccuracies = new boolean[capacity];
+        this.speeds = new float[capacity];
+        this.times = new long[capacity];
+        this.providers = new byte[capacity];
+    }
+
+    /**
+     * Append a point, overwriting the oldest one if the recorder is full.
+     *
+     * @param sample , the point to copy.
+     */
+    public void append(LocationSample sample) {
+        int index;
+        if (size < times.length) {
+            index = head + size;
+            if (index >= times.length) {
+                index -= times.length;
+            }
+            size++;
+        } else {
+            index = head;
+            head = head + 1 == times.length ? 0 : head + 1;
+        }
+        latitudes[index] = sample.latitude;
+        longitudes[index] = sample.longitude;
+        accuracies[index] = sample.accuracy;
+        hasAccuracies[index] = sample.hasAccuracy;
+        speeds[index] = sample.speed;
+        times[index] = sample.time;
+        providers[index] = (byte) sample.provider;
+        appendCount++;
+    }
+
+    /**
+     * Copy a point into a sample.
+     *
+     * @param position , the position of the point, 0 being the oldest one.
+     * @param sample , the sample to fill.
+     * @return the filled sample.
+     */
+    public LocationSample get(int position, LocationSample sample) {
+        int index = toIndex(position);
+        return sample.set(latitudes[index], longitudes[index], accuracies[index], hasAccuracies[index],
+                speeds[index], times[index], providers[index]);
+    }
+
+    private int toIndex(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + size);
+        }
+        int index = head + position;
+        return index >= times.length ? index - times.length : index;
+    }
+
+    /**
+     * @return the number of points.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return times.length;
+    }
+
+    /**
+     * @return the number of points appended since the creation or the last clear, including
+     * the overwritten ones.
+     */
+    public long getAppendCount() {
+        return appendCount;
+    }
+
+    /**
+     * Remove all the points.
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+        appendCount = 0;
+    }
+
+    /**
+     * @return a new cursor positioned before the oldest point. Keep and {@link Cursor#reset()}
+     * it to iterate again without allocation.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Iterates over the points from the oldest to the newest.
+     * <pre>
+     * while (cursor.next()) {
+     *     cursor.getLatitude();
+     * }
+     * </pre>
+     */
+    public final class Cursor {
+
+        private int position = -1;
+        private int index;
+
+        private Cursor() {
+        }
+
+        /**
+         * Move the cursor back before the oldest point.
+         */
+        public void reset() {
+            position = -1;
+        }
+
+        /**
+         * @return true if the cursor moved to the next point, false at the end of the track.
+         */
+        public boolean next() {
+            if (position + 1 >= size) {
+                return false;
+            }
+            position++;
+            index = toIndex(position);
+            return true;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        public double getLatitude() {
+            return latitudes[index];
+        }
+
+        public double getLongitude() {
+            return longitudes[index];
+        }
+
+        public float getAccuracy() {
+            return accuracies[index];
+        }
+
+        public boolean hasAccuracy() {
+            return hasAccuracies[index];
+        }
+
+        public float getSpeed() {
+            return speeds[index];
+        }
+
+        public long getTime() {
+            return times[index];
+        }
+
+        public int getProvider() {
+            return providers[index];
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package com.mindandgo.locationdroid;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Append-only persistence of the accepted locations in memory-mapped segment files.
+ *
+ * Each location is a fixed width record ending with a checksum, written last: a record torn by
+ * a process death fails the checksum and is dropped when the store is opened again. A new
+ * segment file is created when the current one is full. The locations are stored in time order,
+ * so they can be read sequentially or by time range.
+ */
+public final class TrackStore implements Closeable {
+
+    // ==========================================================
+    // Record layout
+    // ==========================================================
+    private static final int TIME_OFFSET = 0;
+    private static final int LATITUDE_OFFSET = 8;
+    private static final int LONGITUDE_OFFSET = 16;
+    private static final int ACCURACY_OFFSET = 24;
+    private static final int SPEED_OFFSET = 28;
+    // the provider in the low byte, the flags above
+    private static final int PROVIDER_OFFSET = 32;
+    private static final int CHECKSUM_OFFSET = 36;
+    static final int RECORD_SIZE = 40;
+    private static final int HAS_ACCURACY_FLAG = 0x100;
+
+    // ==========================================================
+    // Constants
+    // ==========================================================
+    static final int DEFAULT_SEGMENT_RECORDS = 16384;
+    private static final String SEGMENT_SUFFIX = ".track";
+    private static final long CHECKSUM_SEED = 0x5DEECE66DL;
+    private static final long CHECKSUM_PRIME = 0x100000001B3L;
+
+    private final File directory;
+    private final int segmentRecords;
+    private final List<Segment> segments = new ArrayList<>();
+
+    private FileChannel writeChannel;
+    private MappedByteBuffer writeBuffer;
+    private Segment writeSegment;
+    private long lastTime = Long.MIN_VALUE;
+    private boolean closed = false;
+
+    /**
+     * Open the store, creating the directory if needed and recovering the last segment.
+     *
+     * @param directory , the directory of the segment files, used by this store only.
+     */
+    public TrackStore(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * Open the store, creating the directory if needed and recovering the last segment.
+     *
+     * @param directory , the directory of the segment files, used by this store only.
+     * @param segmentRecords , the number of records of a segment file. Default = 16384 (640 KB).
+     */
+    public TrackStore(File directory, int segmentRecords) throws IOException {
+        if (segmentRecords < 1) {
+            throw new IllegalArgumentException("Segment records cannot be lower than 1");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        open();
+    }
+
+    private void open() throws IOException {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null || files.length == 0) {
+            return;
+        }
+        Arrays.sort(files);
+
+        // the segments before the last one were full when the next one was created
+        for (int i = 0; i < files.length - 1; i++) {
+            Segment segment = new Segment(files[i], segmentIndex(files[i]));
+            segment.count = (int) (files[i].length() / RECORD_SIZE);
+            if (segment.count > 0) {
+                segment.firstTime = readFirstTime(files[i]);
+                segments.add(segment);
+            }
+        }
+
+        File last = files[files.length - 1];
+        Segment segment = new Segment(last, segmentIndex(last));
+        mapForWrite(segment, (int) (last.length() / RECORD_SIZE));
+        recover();
+    }
+
+    private void recover() throws IOException {
+        int capacity = writeBuffer.capacity() / RECORD_SIZE;
+        int count = 0;
+        while (count < capacity && isValid(writeBuffer, count * RECORD_SIZE)) {
+            count++;
+        }
+        if (count < capacity) {
+            // truncate a torn record
+            for (int i = count * RECORD_SIZE; i < (count + 1) * RECORD_SIZE; i++) {
+                writeBuffer.put(i, (byte) 0);
+            }
+        }
+        writeSegment.count = count;
+        if (count > 0) {
+            writeSegment.firstTime = writeBuffer.getLong(TIME_OFFSET);
+            lastTime = writeBuffer.getLong((count - 1) * RECORD_SIZE + TIME_OFFSET);
+        } else if (segments.size() > 1) {
+            // nothing written yet in the last segment, the time comes from the previous one
+            Segment previous = segments.get(segments.size() - 2);
+            lastTime = readTime(previous, previous.count - 1);
+        }
+    }
+
+    // ==========================================================
+    // Append
+    // ==========================================================
+
+    /**
+     * Append a location. The locations must be appended in time order.
+     *
+     * @param sample , the location to append.
+     * @return false if the location is older than the last appended one and has been ignored.
+     */
+    public synchronized boolean append(LocationSample sample) throws IOException {
+        checkOpen();
+        if (sample.time < lastTime) {
+            return false;
+        }
+        if (writeSegment == null || writeSegment.count == writeBuffer.capacity() / RECORD_SIZE) {
+            rollOver();
+        }
+        int offset = writeSegment.count * RECORD_SIZE;
+        long latitudeBits = Double.doubleToRawLongBits(sample.latitude);
+        long longitudeBits = Double.doubleToRawLongBits(sample.longitude);
+        int accuracyBits = Float.floatToRawIntBits(sample.accuracy);
+        int speedBits = Float.floatToRawIntBits(sample.speed);
+        int provider = (sample.provider & 0xFF) | (sample.hasAccuracy ? HAS_ACCURACY_FLAG : 0);
+
+        writeBuffer.putLong(offset + TIME_OFFSET, sample.time);
+        writeBuffer.putLong(offset + LATITUDE_OFFSET, latitudeBits);
+        writeBuffer.putLong(offset + LONGITUDE_OFFSET, longitudeBits);
+        writeBuffer.putInt(offset + ACCURACY_OFFSET, accuracyBits);
+        writeBuffer.putInt(offset + SPEED_OFFSET, speedBits);
+        writeBuffer.putInt(offset + PROVIDER_OFFSET, provider);
+        // written last: the record is valid only once the checksum is there
+        writeBuffer.putInt(offset + CHECKSUM_OFFSET,
+                checksum(sample.time, latitudeBits, longitudeBits, accuracyBits, speedBits, provider));
+
+        if (writeSegment.count == 0) {
+            writeSegment.firstTime = sample.time;
+        }
+        writeSegment.count++;
+        lastTime = sample.time;
+        return true;
+    }
+
+    private void rollOver() throws IOException {
+        int index = 0;
+        if (writeSegment != null) {
+            writeBuffer.force();
+            writeChannel.close();
+            index = writeSegment.index + 1;
+        }
+        File file = new File(directory, String.format(Locale.US, "%010d%s", index, SEGMENT_SUFFIX));
+        mapForWrite(new Segment(file, index), segmentRecords);
+    }
+
+    private void mapForWrite(Segment segment, int records) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segment.file, "rw");
+        try {
+            file.setLength((long) records * RECORD_SIZE);
+            writeChannel = file.getChannel();
+            writeBuffer = writeChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) records * RECORD_SIZE);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        writeSegment = segment;
+        segments.add(segment);
+    }
+
+    /**
+     * Write the appended locations to the storage device.
+     */
+    public synchronized void force() {
+        if (writeBuffer != null && !closed) {
+            writeBuffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (writeChannel != null) {
+            writeBuffer.force();
+            writeChannel.close();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Track store is closed");
+        }
+    }
+
+    // ==========================================================
+    // Read
+    // ==========================================================
+
+    /**
+     * @return the number of stored locations.
+     */
+    public synchronized long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    /**
+     * @return a cursor over all the stored locations.
+     */
+    public Cursor cursor() throws IOException {
+        return cursor(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param fromTime , the first time, included.
+     * @param toTime , the last time, included.
+     * @return a cursor over the locations stored between the both times. The cursor does not see
+     * the locations appended after its creation.
+     */
+    public synchronized Cursor cursor(long fromTime, long toTime) throws IOException {
+        checkOpen();
+        // last segment starting strictly before fromTime, the next ones start at fromTime or later
+        int first = 0;
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (segments.get(middle).firstTime < fromTime) {
+                first = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        List<Segment> snapshot = new ArrayList<>();
+        int[] counts = new int[segments.size() - first];
+        for (int i = first; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            if (segment.count > 0 && segment.firstTime <= toTime) {
+                counts[snapshot.size()] = segment.count;
+                snapshot.add(segment);
+            }
+        }
+        return new Cursor(snapshot, counts, fromTime, toTime);
+    }
+
+    private ByteBuffer mapForRead(Segment segment) throws IOException {
+        synchronized (this) {
+            if (segment == writeSegment && !closed) {
+                return writeBuffer.duplicate();
+            }
+        }
+        RandomAccessFile file = new RandomAccessFile(segment.file, "r");
+        try {
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Iterates over the stored locations from the oldest to the newest.
+     */
+    public final class Cursor {
+
+        private final List<Segment> segments;
+        private final int[] counts;
+        private final long fromTime;
+        private final long toTime;
+        private int segment = -1;
+        private boolean ended = false;
+        private ByteBuffer buffer;
+        private int record;
+        private int offset;
+
+        private Cursor(List<Segment> segments, int[] counts, long fromTime, long toTime) {
+            this.segments = segments;
+            this.counts = counts;
+            this.fromTime = fromTime;
+            this.toTime = toTime;
+        }
+
+        /**
+         * @return true if the cursor moved to the next location, false at the end of the range.
+         */
+        public boolean next() throws IOException {
+            if (ended) {
+                return false;
+            }
+            if (buffer != null && record + 1 < counts[segment]) {
+                record++;
+            } else {
+                // a segment can end before fromTime: the range then starts in a next one
+                do {
+                    if (segment + 1 >= segments.size()) {
+                        ended = true;
+                        return false;
+                    }
+                    segment++;
+                    buffer = mapForRead(segments.get(segment));
+                    record = firstRecordFrom(buffer, counts[segment], fromTime);
+                } while (record >= counts[segment]);
+            }
+            offset = record * RECORD_SIZE;
+            if (getTime() > toTime) {
+                ended = true;
+                return false;
+            }
+            return true;
+        }
+
+        public long getTime() {
+            return buffer.getLong(offset + TIME_OFFSET);
+        }
+
+        public double getLatitude() {
+            return buffer.getDouble(offset + LATITUDE_OFFSET);
+        }
+
+        public double getLongitude() {
+            return buffer.getDouble(offset + LONGITUDE_OFFSET);
+        }
+
+        public float getAccuracy() {
+            return buffer.getFloat(offset + ACCURACY_OFFSET);
+        }
+
+        public float getSpeed() {
+            return buffer.getFloat(offset + SPEED_OFFSET);
+        }
+
+        public int getProvider() {
+            return (byte) buffer.getInt(offset + PROVIDER_OFFSET);
+        }
+
+        public boolean hasAccuracy() {
+            return (buffer.getInt(offset + PROVIDER_OFFSET) & HAS_ACCURACY_FLAG) != 0;
+        }
+
+        /**
+         * Copy the current location into a sample.
+         *
+         * @param sample , the sample to fill.
+         * @return the filled sample.
+         */
+        public LocationSample get(LocationSample sample) {
+            return sample.set(getLatitude(), getLongitude(), getAccuracy(), hasAccuracy(), getSpeed(),
+                    getTime(), getProvider());
+        }
+    }
+
+    // ==========================================================
+    // Records
+    // ==========================================================
+
+    private static int firstRecordFrom(ByteBuffer buffer, int count, long fromTime) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getLong(middle * RECORD_SIZE + TIME_OFFSET) < fromTime) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isValid(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset + CHECKSUM_OFFSET) == checksum(
+                buffer.getLong(offset + TIME_OFFSET),
+                buffer.getLong(offset + LATITUDE_OFFSET),
+                buffer.getLong(offset + LONGITUDE_OFFSET),
+                buffer.getInt(offset + ACCURACY_OFFSET),
+                buffer.getInt(offset + SPEED_OFFSET),
+                buffer.getInt(offset + PROVIDER_OFFSET));
+    }
+
+    private static int checksum(long time, long latitudeBits, long longitudeBits, int accuracyBits,
+                                int speedBits, int provider) {
+        long hash = CHECKSUM_SEED;
+        hash = (hash ^ time) * CHECKSUM_PRIME;
+        hash = (hash ^ latitudeBits) * CHECKSUM_PRIME;
+        hash = (hash ^ longitudeBits) * CHECKSUM_PRIME;
+        hash = (hash ^ accuracyBits) * CHECKSUM_PRIME;
+        hash = (hash ^ speedBits) * CHECKSUM_PRIME;
+        hash = (hash ^ provider) * CHECKSUM_PRIME;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private long readTime(Segment segment, int record) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segment.file, "r");
+        try {
+            file.seek((long) record * RECORD_SIZE + TIME_OFFSET);
+            return file.readLong();
+        } finally {
+            file.close();
+        }
+    }
+
+    private static long readFirstTime(File segmentFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segmentFile, "r");
+        try {
+            file.seek(TIME_OFFSET);
+            return file.readLong();
+        } finally {
+            file.close();
+        }
+    }
+
+    private static int segmentIndex(File file) throws IOException {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid segment file " + file);
+        }
+    }
+
+    private static final class Segment {
+
+        private final File file;
+        private final int index;
+        // an empty segment sorts after all the others
+        private long firstTime = Long.MAX_VALUE;
+        private int count;
+
+        private Segment(File file, int index) {
+            this.file = file;
+            this.index = index;
+        }
+    }
+}
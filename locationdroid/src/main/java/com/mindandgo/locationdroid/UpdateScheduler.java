@@ -0,0 +1,125 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * Speed-adaptive update interval for the providers.
+ *
+ * The wanted interval is the time needed to travel the distanceBetweenUpdates of the selector at
+ * the current speed, between the min and the max interval. It is not bounded by the max time
+ * between updates of the selector: a slow or stationary device is registered with up to the max
+ * interval. To avoid
+ * re-registering the providers for every fix, the speed is smoothed and a new interval is only
+ * returned when it differs from the registered one by the hysteresis ratio. Shorter intervals
+ * are applied at once, longer ones only after the device has been slower for the dwell time.
+ */
+public final class UpdateScheduler {
+
+    /** Returned by {@link #update(LocationSelector, float, long)} when the interval is unchanged. */
+    public static final long NO_CHANGE = -1L;
+
+    // ==========================================================
+    // Constants
+    // ==========================================================
+    static final long DEFAULT_MIN_INTERVAL = 1000L;
+    static final long DEFAULT_MAX_INTERVAL = 120000L;
+    static final float DEFAULT_HYSTERESIS = 2f;
+    static final long DEFAULT_DWELL_TIME = 30000L;
+    private static final float SPEED_SMOOTHING = 0.3f;
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final float hysteresis;
+    private final long dwellTime;
+
+    private long interval;
+    private float smoothedSpeed;
+    private boolean hasSpeed = false;
+    private long slowerSince = -1L;
+
+    public UpdateScheduler() {
+        this(DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL, DEFAULT_HYSTERESIS, DEFAULT_DWELL_TIME);
+    }
+
+    /**
+     *
+     * @param minInterval , the shortest interval in milliseconds. Default = 1 second.
+     * @param maxInterval , the longest interval in milliseconds, used when stationary. Default = 2 minutes.
+     * @param hysteresis , the ratio between the wanted and the registered interval needed to change
+     *                   the registered interval, greater than 1. Default = 2.
+     * @param dwellTime , the time in milliseconds the wanted interval has to stay longer before the
+     *                  registered interval is made longer. Default = 30 seconds.
+     */
+    public UpdateScheduler(long minInterval, long maxInterval, float hysteresis, long dwellTime) {
+        if (maxInterval < minInterval) {
+            throw new IllegalArgumentException("Max interval cannot be lower than the min interval");
+        }
+        if (hysteresis <= 1f) {
+            throw new IllegalArgumentException("Hysteresis must be greater than 1");
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.hysteresis = hysteresis;
+        this.dwellTime = dwellTime;
+    }
+
+    /**
+     * Set the currently registered interval and forget the speed history.
+     *
+     * @param interval , the registered interval in milliseconds.
+     */
+    public void reset(long interval) {
+        this.interval = interval;
+        this.hasSpeed = false;
+        this.slowerSince = -1L;
+    }
+
+    /**
+     * Update the scheduler with a new speed.
+     *
+     * @param selector , the selector giving the distance between updates.
+     * @param speed , the speed in meters/second of an accepted location.
+     * @param time , the time of the speed in milliseconds.
+     * @return the new interval in milliseconds to register, or {@link #NO_CHANGE}.
+     */
+    public long update(LocationSelector selector, float speed, long time) {
+        if (hasSpeed) {
+            smoothedSpeed += SPEED_SMOOTHING * (speed - smoothedSpeed);
+        } else {
+            smoothedSpeed = speed;
+            hasSpeed = true;
+        }
+
+        long wanted = maxInterval;
+        if (smoothedSpeed > 0) {
+            float travelTime = selector.getDistanceBetweenUpdates() * 1000f / smoothedSpeed;
+            if (travelTime < maxInterval) {
+                wanted = Math.max(minInterval, (long) travelTime);
+            }
+        }
+
+        if (wanted * hysteresis <= interval) {
+            // faster: apply at once
+            slowerSince = -1L;
+            interval = wanted;
+            return interval;
+        } else if (wanted >= interval * hysteresis) {
+            // slower: apply once the device has been slower for the dwell time
+            if (slowerSince < 0) {
+                slowerSince = time;
+            } else if (time - slowerSince >= dwellTime) {
+                slowerSince = -1L;
+                interval = wanted;
+                return interval;
+            }
+        } else {
+            slowerSince = -1L;
+        }
+        return NO_CHANGE;
+    }
+
+    /**
+     * @return the registered interval in milliseconds.
+     */
+    public long getInterval() {
+        return interval;
+    }
+}
@@ -0,0 +1,27 @@
+package com.mindandgo.locationdroid;
+
+/**
+ * GPS fixes along the meridian 0 for the tests.
+ */
+final class Fixes {
+
+    // about 11 meters of latitude
+    static final double STEP = 0.0001d;
+
+    private Fixes() {
+    }
+
+    /**
+     * @return the sample filled with a GPS fix without speed.
+     */
+    static LocationSample fix(LocationSample sample, double latitude, float accuracy, long time) {
+        return fix(sample, latitude, accuracy, 0f, time);
+    }
+
+    /**
+     * @return the sample filled with a GPS fix.
+     */
+    static LocationSample fix(LocationSample sample, double latitude, float accuracy, float speed, long time) {
+        return sample.set(latitude, 0d, accuracy, true, speed, time, LocationSample.PROVIDER_GPS);
+    }
+}
@@ -0,0 +1,110 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.within;
+
+public class GeodesyTest {
+
+    // Paris and London
+    private static final double PARIS_LATITUDE = 48.8566d;
+    private static final double PARIS_LONGITUDE = 2.3522d;
+    private static final double LONDON_LATITUDE = 51.5074d;
+    private static final double LONDON_LONGITUDE = -0.1278d;
+
+    @Test
+    public void shouldComputeHaversineDistance() {
+        assertThat(Geodesy.haversine(PARIS_LATITUDE, PARIS_LONGITUDE, LONDON_LATITUDE, LONDON_LONGITUDE))
+                .isCloseTo(343560d, within(500d));
+        assertThat(Geodesy.haversine(0d, 0d, 0d, 0d)).isEqualTo(0d);
+    }
+
+    @Test
+    public void shouldApproximateShortDistances() {
+        // about 1 km north east
+        double latitude = PARIS_LATITUDE + 0.0064d;
+        double longitude = PARIS_LONGITUDE + 0.0097d;
+        double exact = Geodesy.haversine(PARIS_LATITUDE, PARIS_LONGITUDE, latitude, longitude);
+
+        assertThat(Geodesy.equirectangular(PARIS_LATITUDE, PARIS_LONGITUDE, latitude, longitude))
+                .isCloseTo(exact, within(exact * 0.005d));
+        Geodesy.Equirectangular cached = new Geodesy.Equirectangular();
+        assertThat(cached.distance(PARIS_LATITUDE, PARIS_LONGITUDE, latitude, longitude))
+                .isCloseTo(exact, within(exact * 0.005d));
+    }
+
+    @Test
+    public void shouldApproximateAtHighLatitude() {
+        Geodesy.Equirectangular cached = new Geodesy.Equirectangular();
+        cached.cos(70d);
+        // about 1 km east, after a move of 100 km north
+        double exact = Geodesy.haversine(70.9d, 0d, 70.9d, 0.0274d);
+
+        assertThat(cached.distance(70.9d, 0d, 70.9d, 0.0274d)).isCloseTo(exact, within(exact * 0.005d));
+        exact = Geodesy.haversine(60d, 0d, 60.0064d, 0.0194d);
+        assertThat(Geodesy.equirectangular(60d, 0d, 60.0064d, 0.0194d)).isCloseTo(exact, within(exact * 0.005d));
+    }
+
+    @Test
+    public void shouldCacheCosine() {
+        Geodesy.Equirectangular cached = new Geodesy.Equirectangular(1d);
+        double cos = cached.cos(45d);
+
+        assertThat(cached.cos(45.5d)).isEqualTo(cos);
+        assertThat(cached.cos(47d)).isEqualTo(Math.cos(Math.toRadians(47d)));
+    }
+
+    @Test
+    public void shouldComputeBearing() {
+        assertThat(Geodesy.bearing(0d, 0d, 1d, 0d)).isCloseTo(0f, within(1e-4f));
+        assertThat(Geodesy.bearing(0d, 0d, 0d, 1d)).isCloseTo(90f, within(1e-4f));
+        assertThat(Geodesy.bearing(0d, 0d, -1d, 0d)).isCloseTo(180f, within(1e-4f));
+        assertThat(Geodesy.bearing(0d, 0d, 0d, -1d)).isCloseTo(270f, within(1e-4f));
+    }
+
+    @Test
+    public void shouldMeasureTrip() {
+        Odometer odometer = new Odometer();
+        LocationSample sample = new LocationSample();
+        double step = 10d / Geodesy.METERS_PER_DEGREE;
+
+        // 10 meters per second during 10 seconds
+        for (int i = 0; i <= 10; i++) {
+            odometer.update(sample.set(i * step, 0d, 5f, true, 0f, i * 1000L, LocationSample.PROVIDER_GPS));
+        }
+        // parked 10 seconds with 1 meter of jitter
+        double jitter = 1d / Geodesy.METERS_PER_DEGREE;
+        for (int i = 11; i <= 20; i++) {
+            odometer.update(sample.set(10 * step + (i % 2) * jitter, 0d, 5f, true, 0f, i * 1000L, LocationSample.PROVIDER_GPS));
+        }
+
+        assertThat(odometer.getDistance()).isCloseTo(100d, within(2d));
+        assertThat(odometer.getMovingTime()).isEqualTo(10000L);
+        assertThat(odometer.getAverageSpeed()).isCloseTo(10f, within(0.2f));
+        assertThat(odometer.getMaxSpeed()).isCloseTo(10f, within(0.2f));
+        assertThat(odometer.getCurrentSpeed()).isEqualTo(0f);
+
+        odometer.reset();
+        assertThat(odometer.getDistance()).isEqualTo(0d);
+    }
+
+    @Test
+    public void shouldNotCountSlowSegments() {
+        Odometer odometer = new Odometer();
+        LocationSample sample = new LocationSample();
+        double step = 10d / Geodesy.METERS_PER_DEGREE;
+
+        // 10 meters per second during 10 seconds
+        for (int i = 0; i <= 10; i++) {
+            odometer.update(sample.set(i * step, 0d, 5f, true, 0f, i * 1000L, LocationSample.PROVIDER_GPS));
+        }
+        // a drift of 10 meters in 30 seconds, beyond the accuracy but below the moving speed
+        odometer.update(sample.set(11 * step, 0d, 5f, true, 0f, 40000L, LocationSample.PROVIDER_GPS));
+
+        assertThat(odometer.getDistance()).isCloseTo(100d, within(2d));
+        assertThat(odometer.getMovingTime()).isEqualTo(10000L);
+        assertThat(odometer.getAverageSpeed()).isCloseTo(10f, within(0.2f));
+        assertThat(odometer.getCurrentSpeed()).isEqualTo(0f);
+    }
+}
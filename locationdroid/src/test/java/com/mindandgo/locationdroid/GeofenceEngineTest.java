@@ -0,0 +1,112 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static com.mindandgo.locationdroid.Geodesy.METERS_PER_DEGREE;
+
+public class GeofenceEngineTest {
+
+    private final List<String> events = new ArrayList<>();
+    private GeofenceEngine engine;
+    private LocationSample location;
+
+    @Before
+    public void init() {
+        engine = new GeofenceEngine(new GeofenceListener() {
+            @Override
+            public void onEnter(Geofence geofence, LocationSample location) {
+                events.add("enter " + geofence.getId());
+            }
+
+            @Override
+            public void onExit(Geofence geofence, LocationSample location) {
+                events.add("exit " + geofence.getId());
+            }
+
+            @Override
+            public void onDwell(Geofence geofence, LocationSample location) {
+                events.add("dwell " + geofence.getId());
+            }
+        }, 60000L);
+        location = new LocationSample();
+    }
+
+    @Test
+    public void shouldReportCircleTransitions() {
+        engine.add(Geofence.circle("depot", 45d, 5d, 100f));
+
+        evaluate(-200d, 0L);
+        evaluate(-50d, 1000L);
+        evaluate(0d, 30000L);
+        evaluate(50d, 61000L);
+        evaluate(200d, 62000L);
+
+        assertThat(events).containsExactly("enter depot", "dwell depot", "exit depot");
+    }
+
+    @Test
+    public void shouldReportPolygonTransitions() {
+        double side = 100d / METERS_PER_DEGREE;
+        engine.add(Geofence.polygon("square", new double[]{45d, 45d, 45d + side, 45d + side},
+                new double[]{5d, 5d + side, 5d + side, 5d}));
+
+        evaluate(50d, 0L);
+        evaluate(150d, 1000L);
+
+        assertThat(events).containsExactly("enter square", "exit square");
+    }
+
+    @Test
+    public void shouldOnlyTestNearbyGeofences() {
+        // 100 000 geofences on a 1 km grid, none around the location
+        for (int i = 0; i < 100000; i++) {
+            engine.add(Geofence.circle("zone" + i, 46d + (i / 316) * 0.01d, 6d + (i % 316) * 0.01d, 50f));
+        }
+        engine.add(Geofence.circle("depot", 45d, 5d, 100f));
+
+        evaluate(0d, 0L);
+
+        assertThat(engine.size()).isEqualTo(100001);
+        assertThat(events).containsExactly("enter depot");
+    }
+
+    @Test
+    public void shouldApplyRemovalBeforeNextLocation() {
+        engine.add(Geofence.circle("depot", 45d, 5d, 100f));
+        evaluate(0d, 0L);
+        engine.remove("depot");
+        evaluate(500d, 1000L);
+
+        assertThat(events).containsExactly("enter depot");
+        assertThat(engine.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldKeepCellsAfterManyRemovals() {
+        for (int i = 0; i < 1000; i++) {
+            engine.add(Geofence.circle("zone" + i, 46d + (i / 32) * 0.01d, 6d + (i % 32) * 0.01d, 50f));
+        }
+        engine.add(Geofence.circle("depot", 45d, 5d, 100f));
+        for (int i = 0; i < 1000; i += 2) {
+            engine.remove("zone" + i);
+        }
+
+        evaluate(0d, 0L);
+        // the center of a remaining zone, the removed one next to it
+        engine.evaluate(location.set(46d, 6d + 0.01d, 5f, true, 0f, 1000L, LocationSample.PROVIDER_GPS));
+        engine.evaluate(location.set(46d, 6d, 5f, true, 0f, 2000L, LocationSample.PROVIDER_GPS));
+
+        assertThat(engine.size()).isEqualTo(501);
+        assertThat(events).containsExactly("enter depot", "exit depot", "enter zone1", "exit zone1");
+    }
+
+    private void evaluate(double northMeters, long time) {
+        engine.evaluate(location.set(45d + northMeters / METERS_PER_DEGREE, 5d + 1e-6d, 5f, true, 0f, time,
+                LocationSample.PROVIDER_GPS));
+    }
+}
@@ -0,0 +1,53 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class LocationBatchTest {
+
+    private LocationBatch batch;
+    private LocationSample sample;
+
+    @Before
+    public void init() {
+        batch = new LocationBatch(2);
+        sample = new LocationSample();
+    }
+
+    @Test
+    public void shouldStoreFixesInOrder() {
+        assertThat(batch.add(sample.set(1d, 2d, 3f, true, 4f, 5L, LocationSample.PROVIDER_GPS))).isFalse();
+        assertThat(batch.add(sample.set(6d, 7d, 8f, false, 9f, 10L, LocationSample.PROVIDER_NETWORK))).isTrue();
+
+        assertThat(batch.size()).isEqualTo(2);
+        assertThat(batch.getLatitude(0)).isEqualTo(1d);
+        assertThat(batch.getTime(1)).isEqualTo(10L);
+        assertThat(batch.get(1, sample).hasAccuracy).isFalse();
+        assertThat(sample.provider).isEqualTo(LocationSample.PROVIDER_NETWORK);
+    }
+
+    @Test
+    public void shouldBeReusedAfterClear() {
+        batch.add(sample.set(1d, 2d, 3f, true, 4f, 5L, LocationSample.PROVIDER_GPS));
+        batch.clear();
+
+        assertThat(batch.isEmpty()).isTrue();
+        batch.add(sample.set(6d, 7d, 8f, true, 9f, 10L, LocationSample.PROVIDER_GPS));
+        assertThat(batch.getLatitude(0)).isEqualTo(6d);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldRejectIndexAfterSize() {
+        batch.add(sample);
+        batch.getLatitude(1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectFixWhenFull() {
+        batch.add(sample);
+        batch.add(sample);
+        batch.add(sample);
+    }
+}
@@ -0,0 +1,129 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static com.mindandgo.locationdroid.Fixes.fix;
+
+public class LocationCacheTest {
+
+    private static final long NOW = 1463738400000L;
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private final LocationSample sample = new LocationSample();
+    private final LocationSample fix = new LocationSample();
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), "location.cache");
+    }
+
+    @Test
+    public void shouldRestoreLocationAfterRestart() {
+        LocationCache cache = new LocationCache(file, 30000L, 3600000L, DIRECT);
+        assertThat(cache.put(fix(fix, 1d, 5f, 1f, NOW), NOW)).isTrue();
+
+        LocationCache restarted = new LocationCache(file, 30000L, 3600000L, DIRECT);
+        assertThat(restarted.get(sample)).isTrue();
+        assertThat(sample.latitude).isEqualTo(1d);
+        assertThat(sample.accuracy).isEqualTo(5f);
+        assertThat(sample.time).isEqualTo(NOW);
+        assertThat(sample.provider).isEqualTo(LocationSample.PROVIDER_GPS);
+        assertThat(restarted.getAge(NOW + 1000L)).isEqualTo(1000L);
+    }
+
+    @Test
+    public void shouldRateLimitWrites() {
+        LocationCache cache = new LocationCache(file, 30000L, 3600000L, DIRECT);
+        assertThat(cache.put(fix(fix, 1d, 5f, 1f, NOW), NOW)).isTrue();
+        assertThat(cache.put(fix(fix, 2d, 5f, 1f, NOW + 1000L), NOW + 1000L)).isFalse();
+
+        assertThat(new LocationCache(file).get(sample)).isTrue();
+        assertThat(sample.latitude).isEqualTo(1d);
+
+        // the waiting location is written by the flush
+        cache.flush();
+        assertThat(new LocationCache(file).get(sample)).isTrue();
+        assertThat(sample.latitude).isEqualTo(2d);
+
+        assertThat(cache.put(fix(fix, 3d, 5f, 1f, NOW + 31000L), NOW + 31000L)).isTrue();
+    }
+
+    @Test
+    public void shouldGiveStatusAccordingMaxAge() {
+        LocationCache cache = new LocationCache(file, 0L, 60000L, DIRECT);
+        assertThat(cache.getStatus(NOW)).isEqualTo(LocationCache.Status.EMPTY);
+        assertThat(cache.getAge(NOW)).isEqualTo(-1L);
+
+        cache.put(fix(fix, 1d, 5f, 1f, NOW), NOW);
+        assertThat(cache.getStatus(NOW + 60000L)).isEqualTo(LocationCache.Status.FRESH);
+        assertThat(cache.getStatus(NOW + 60001L)).isEqualTo(LocationCache.Status.STALE);
+
+        cache.clear();
+        assertThat(file.exists()).isFalse();
+        assertThat(cache.getStatus(NOW)).isEqualTo(LocationCache.Status.EMPTY);
+    }
+
+    @Test
+    public void shouldNotBeFreshFromFuture() {
+        LocationCache cache = new LocationCache(file, 0L, 60000L, DIRECT);
+        cache.put(fix(fix, 1d, 5f, 1f, NOW), NOW);
+
+        // the clock went back
+        assertThat(cache.getStatus(NOW - 1000L)).isEqualTo(LocationCache.Status.STALE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativeMaxAge() {
+        new LocationCache(file, 0L, -1L, DIRECT);
+    }
+
+    @Test
+    public void shouldWriteOnWriteExecutor() {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        LocationCache cache = new LocationCache(file, 0L, 60000L, new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        });
+        assertThat(cache.put(fix(fix, 1d, 5f, 1f, NOW), NOW)).isTrue();
+        assertThat(cache.put(fix(fix, 2d, 5f, 1f, NOW + 1000L), NOW + 1000L)).isTrue();
+        assertThat(file.exists()).isFalse();
+
+        // a single write of the latest location
+        assertThat(tasks).hasSize(1);
+        tasks.poll().run();
+        assertThat(new LocationCache(file).get(sample)).isTrue();
+        assertThat(sample.latitude).isEqualTo(2d);
+    }
+
+    @Test
+    public void shouldIgnoreCorruptedFile() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{0x4C, 0x44, 0x43, 0x31, 0x00});
+        out.close();
+
+        LocationCache cache = new LocationCache(file);
+        assertThat(cache.get(sample)).isFalse();
+        assertThat(cache.getStatus(NOW)).isEqualTo(LocationCache.Status.EMPTY);
+    }
+}
@@ -0,0 +1,62 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class LocationCountersTest {
+
+    private LocationCounters counters;
+
+    @Before
+    public void setUp() {
+        counters = new LocationCounters();
+    }
+
+    @Test
+    public void shouldCountFixesByProviderAndDecision() {
+        counters.onFix(LocationSample.PROVIDER_GPS, LocationSelector.ACCEPTED_FIRST);
+        counters.onFix(LocationSample.PROVIDER_GPS, LocationSelector.ACCEPTED_TIME);
+        counters.onFix(LocationSample.PROVIDER_NETWORK, LocationSelector.REJECTED);
+        counters.onFix(LocationSample.PROVIDER_UNKNOWN, LocationSelector.REJECTED);
+        counters.onComparatorUndecided();
+
+        LocationMetricsSnapshot snapshot = counters.snapshot();
+        assertThat(snapshot.getFixCount(LocationSample.PROVIDER_GPS)).isEqualTo(2L);
+        assertThat(snapshot.getFixCount(LocationSample.PROVIDER_GPS, LocationSelector.ACCEPTED_TIME)).isEqualTo(1L);
+        assertThat(snapshot.getFixCount(LocationSample.PROVIDER_UNKNOWN)).isEqualTo(1L);
+        assertThat(snapshot.getDecisionCount(LocationSelector.REJECTED)).isEqualTo(2L);
+        assertThat(snapshot.getComparatorUndecidedCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void shouldBucketByPowerOfTwo() {
+        assertThat(LocationCounters.bucket(0L)).isEqualTo(0);
+        assertThat(LocationCounters.bucket(1L)).isEqualTo(1);
+        assertThat(LocationCounters.bucket(3L)).isEqualTo(2);
+        assertThat(LocationCounters.bucket(4L)).isEqualTo(3);
+        assertThat(LocationCounters.bucket(Long.MAX_VALUE)).isEqualTo(LocationCounters.BUCKET_COUNT - 1);
+        assertThat(LocationMetricsSnapshot.getBucketUpperBound(3)).isEqualTo(7L);
+    }
+
+    @Test
+    public void shouldComputePercentiles() {
+        for (int i = 0; i < 90; i++) {
+            counters.onDelivery(2L, 5000L);
+        }
+        for (int i = 0; i < 10; i++) {
+            counters.onDelivery(1000L, 500000L);
+        }
+
+        LocationMetricsSnapshot snapshot = counters.snapshot();
+        // the snapshot does not change through its histograms
+        snapshot.getFixAgeHistogram()[2] = 0L;
+        assertThat(LocationMetricsSnapshot.getPercentile(snapshot.getFixAgeHistogram(), 50f)).isEqualTo(3L);
+        assertThat(LocationMetricsSnapshot.getPercentile(snapshot.getFixAgeHistogram(), 99f)).isEqualTo(1023L);
+        assertThat(LocationMetricsSnapshot.getPercentile(snapshot.getCallbackDurationHistogram(), 50f)).isEqualTo(7L);
+
+        counters.clear();
+        assertThat(LocationMetricsSnapshot.getPercentile(counters.snapshot().getFixAgeHistogram(), 50f)).isEqualTo(0L);
+    }
+}
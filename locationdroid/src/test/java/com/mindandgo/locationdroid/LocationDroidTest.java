@@ -2,15 +2,29 @@ package com.mindandgo.locationdroid;
 
 import android.content.Context;
 import android.location.Location;
+import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyFloat;
+import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -26,6 +40,8 @@ public class LocationDroidTest{
     private Location secondLocation;
 
     private Location bestLocation;
+    private int batchCount;
+    private int batchSize;
 
     final void setBestLocation(Location location) {
         bestLocation = location;
@@ -114,7 +130,7 @@ public class LocationDroidTest{
 
         // Add a first good accuracy location
         when(firstLocation.getAccuracy()).thenReturn(2f);
-        when(firstLocation.getTime()).thenReturn(2l);
+        when(firstLocation.getTime()).thenReturn(2000l);
         locationDroid.onLocationChanged(firstLocation);
         assertThat(getBestLocation()).isSameAs(firstLocation);
 
@@ -126,7 +142,7 @@ public class LocationDroidTest{
         // So the user need 7.14 seconds to do the 10 meters of the default precision
         // and 7.14 > timeDifference (= 3)
         when(thirdLocation.getAccuracy()).thenReturn(20f);
-        when(thirdLocation.getTime()).thenReturn(5l);
+        when(thirdLocation.getTime()).thenReturn(5000l);
         when(thirdLocation.getSpeed()).thenReturn(1.4f); // = 5.04 km/h (person)
         locationDroid.onLocationChanged(thirdLocation);
         assertThat(getBestLocation()).isSameAs(firstLocation);
@@ -134,12 +150,307 @@ public class LocationDroidTest{
         // 10(meters) / 20 (meter/second) = 0.5
         // 0.5 < timeDifference (=5)
         // The new location is kept even if the accuracy is lower
-        when(thirdLocation.getTime()).thenReturn(7l);
+        when(thirdLocation.getTime()).thenReturn(7000l);
         when(thirdLocation.getSpeed()).thenReturn(20.0f); // = 72 km/h (car)
         locationDroid.onLocationChanged(thirdLocation);
         assertThat(getBestLocation()).isSameAs(thirdLocation);
     }
 
+    @Test
+    public void shouldDeliverLocationsByBatch() throws SecurityException{
+        LocationDroid locationDroid = new LocationDroid(mockContext) {
+            @Override
+            public void onNewLocation(Location location) {
+                setBestLocation(location);
+            }
+
+            @Override
+            public void onNewLocations(LocationBatch locations) {
+                batchCount++;
+                batchSize = locations.size();
+            }
+
+            @Override
+            public void onProviderEnabled(String s) {
+
+            }
+
+            @Override
+            public void onProviderDisabled(String s) {
+
+            }
+
+            @Override
+            public void serviceProviderStatusListener(String provider, int status, Bundle bundle) {
+
+            }
+        };
+        locationDroid.setBatching(2, 0);
+
+        when(firstLocation.getAccuracy()).thenReturn(10f);
+        when(secondLocation.getAccuracy()).thenReturn(5f);
+        when(thirdLocation.getAccuracy()).thenReturn(2f);
+
+        locationDroid.onLocationChanged(firstLocation);
+        assertThat(batchCount).isEqualTo(0);
+
+        // the batch is full
+        locationDroid.onLocationChanged(secondLocation);
+        assertThat(batchCount).isEqualTo(1);
+        assertThat(batchSize).isEqualTo(2);
+
+        // the waiting location is delivered on stop
+        locationDroid.onLocationChanged(thirdLocation);
+        locationDroid.stop();
+        assertThat(batchCount).isEqualTo(2);
+        assertThat(batchSize).isEqualTo(1);
+        assertThat(getBestLocation()).isNull();
+    }
+
+    @Test
+    public void shouldDispatchLocationOnExecutor() throws SecurityException{
+        final List<Runnable> pending = new ArrayList<>();
+        LocationDroid locationDroid = new LocationDroid(mockContext) {
+            @Override
+            public void onNewLocation(Location location) {
+                setBestLocation(location);
+            }
+
+            @Override
+            public void onProviderEnabled(String s) {
+
+            }
+
+            @Override
+            public void onProviderDisabled(String s) {
+
+            }
+
+            @Override
+            public void serviceProviderStatusListener(String provider, int status, Bundle bundle) {
+
+            }
+        };
+        locationDroid.setCallbackExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                pending.add(runnable);
+            }
+        });
+
+        when(firstLocation.getAccuracy()).thenReturn(2f);
+        locationDroid.onLocationChanged(firstLocation);
+
+        // the current location is published before the callback runs
+        assertThat(locationDroid.getCurrentLocation()).isSameAs(firstLocation);
+        assertThat(getBestLocation()).isNull();
+
+        pending.get(0).run();
+        assertThat(getBestLocation()).isSameAs(firstLocation);
+    }
+
+    @Test
+    public void shouldCacheProviderState() throws SecurityException{
+        final List<String> disabled = new ArrayList<>();
+        LocationDroid locationDroid = new LocationDroid(mockContext) {
+            @Override
+            public void onNewLocation(Location location) {
+                setBestLocation(location);
+            }
+
+            @Override
+            public void onProviderEnabled(String s) {
+
+            }
+
+            @Override
+            public void onProviderDisabled(String s) {
+                disabled.add(s);
+            }
+
+            @Override
+            public void serviceProviderStatusListener(String provider, int status, Bundle bundle) {
+
+            }
+        };
+
+        locationDroid.start();
+        assertThat(locationDroid.unavailableProviders()).isEmpty();
+        assertThat(locationDroid.unavailableProviders()).isEmpty();
+        verify(mockLocationManager, times(1)).isProviderEnabled(LocationManager.GPS_PROVIDER);
+
+        // the provider callbacks update the cache
+        ArgumentCaptor<LocationListener> listener = ArgumentCaptor.forClass(LocationListener.class);
+        verify(mockLocationManager).requestLocationUpdates(eq(LocationManager.GPS_PROVIDER), anyLong(), anyFloat(), listener.capture());
+        listener.getValue().onProviderDisabled(LocationManager.GPS_PROVIDER);
+
+        assertThat(locationDroid.unavailableProviders()).containsExactly(LocationManager.GPS_PROVIDER);
+        assertThat(disabled).containsExactly(LocationManager.GPS_PROVIDER);
+        verify(mockLocationManager, times(1)).isProviderEnabled(LocationManager.GPS_PROVIDER);
+    }
+
+    @Test
+    public void shouldRecordMetrics() throws SecurityException{
+        LocationDroid locationDroid = new LocationDroid(mockContext) {
+            @Override
+            public void onNewLocation(Location location) {
+                setBestLocation(location);
+            }
+
+            @Override
+            public void onProviderEnabled(String s) {
+
+            }
+
+            @Override
+            public void onProviderDisabled(String s) {
+
+            }
+
+            @Override
+            public void serviceProviderStatusListener(String provider, int status, Bundle bundle) {
+
+            }
+        };
+        LocationCounters counters = new LocationCounters();
+        locationDroid.setMetrics(counters);
+
+        when(firstLocation.getProvider()).thenReturn(LocationManager.GPS_PROVIDER);
+        when(firstLocation.getAccuracy()).thenReturn(5f);
+        when(firstLocation.getTime()).thenReturn(System.currentTimeMillis());
+        locationDroid.onLocationChanged(firstLocation);
+        when(secondLocation.getProvider()).thenReturn(LocationManager.NETWORK_PROVIDER);
+        when(secondLocation.getAccuracy()).thenReturn(50f);
+        locationDroid.onLocationChanged(secondLocation);
+
+        LocationMetricsSnapshot snapshot = counters.snapshot();
+        assertThat(snapshot.getFixCount(LocationSample.PROVIDER_GPS, LocationSelector.ACCEPTED_FIRST)).isEqualTo(1L);
+        assertThat(snapshot.getFixCount(LocationSample.PROVIDER_NETWORK, LocationSelector.REJECTED)).isEqualTo(1L);
+        assertThat(snapshot.getFixCount(LocationSample.PROVIDER_NETWORK)).isEqualTo(1L);
+        assertThat(LocationMetricsSnapshot.getPercentile(snapshot.getFixAgeHistogram(), 100f)).isLessThan(1024L);
+    }
+
+    @Test
+    public void shouldRegisterPassiveOnlyWhenStationary() throws SecurityException{
+        final List<Location> delivered = new ArrayList<>();
+        LocationDroid locationDroid = new LocationDroid(mockContext) {
+            @Override
+            public void onNewLocation(Location location) {
+                delivered.add(location);
+            }
+
+            @Override
+            public void onProviderEnabled(String s) {
+
+            }
+
+            @Override
+            public void onProviderDisabled(String s) {
+
+            }
+
+            @Override
+            public void serviceProviderStatusListener(String provider, int status, Bundle bundle) {
+
+            }
+        };
+        locationDroid.setStationaryDetector(new StationaryDetector(50f, 1000L));
+        locationDroid.start();
+
+        when(firstLocation.getAccuracy()).thenReturn(5f);
+        when(firstLocation.getTime()).thenReturn(0L);
+        locationDroid.onLocationChanged(firstLocation);
+        when(secondLocation.getAccuracy()).thenReturn(5f);
+        when(secondLocation.getTime()).thenReturn(1000L);
+        locationDroid.onLocationChanged(secondLocation);
+        when(thirdLocation.getAccuracy()).thenReturn(5f);
+        when(thirdLocation.getTime()).thenReturn(2000L);
+        locationDroid.onLocationChanged(thirdLocation);
+
+        // the fix at the same place once stationary is not delivered
+        assertThat(delivered).containsExactly(firstLocation, secondLocation);
+        verify(mockLocationManager, times(1)).requestLocationUpdates(eq(LocationManager.GPS_PROVIDER), anyLong(), anyFloat(), any(LocationListener.class));
+        verify(mockLocationManager, times(2)).requestLocationUpdates(eq(LocationManager.PASSIVE_PROVIDER), anyLong(), anyFloat(), any(LocationListener.class));
+    }
+
+    @Test
+    public void shouldReadLastKnownLocationBeforeRegistering() throws SecurityException{
+        LocationDroid locationDroid = new LocationDroid(mockContext) {
+            @Override
+            public void onNewLocation(Location location) {
+                setBestLocation(location);
+            }
+
+            @Override
+            public void onProviderEnabled(String s) {
+
+            }
+
+            @Override
+            public void onProviderDisabled(String s) {
+
+            }
+
+            @Override
+            public void serviceProviderStatusListener(String provider, int status, Bundle bundle) {
+
+            }
+        };
+        when(firstLocation.getAccuracy()).thenReturn(5f);
+        when(mockLocationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER)).thenReturn(firstLocation);
+
+        assertThat(locationDroid.start()).isSameAs(firstLocation);
+
+        // no fix can be accepted on the updates thread while the last known location is read
+        InOrder inOrder = inOrder(mockLocationManager);
+        inOrder.verify(mockLocationManager).getLastKnownLocation(LocationManager.GPS_PROVIDER);
+        inOrder.verify(mockLocationManager).requestLocationUpdates(eq(LocationManager.GPS_PROVIDER), anyLong(), anyFloat(), any(LocationListener.class));
+    }
+
+    @Test
+    public void shouldScheduleUpdatesWithAcceptedSpeedsOnly() throws SecurityException{
+        LocationDroid locationDroid = new LocationDroid(mockContext) {
+            @Override
+            public void onNewLocation(Location location) {
+                setBestLocation(location);
+            }
+
+            @Override
+            public void onProviderEnabled(String s) {
+
+            }
+
+            @Override
+            public void onProviderDisabled(String s) {
+
+            }
+
+            @Override
+            public void serviceProviderStatusListener(String provider, int status, Bundle bundle) {
+
+            }
+        };
+        locationDroid.setUsingAdaptiveUpdates(true).setPlausibilityFilter(new PlausibilityFilter());
+        locationDroid.start();
+
+        // a walker: 10(meters) / 1.4 (meter/second) = 7.1 seconds instead of 30
+        when(firstLocation.getAccuracy()).thenReturn(5f);
+        when(firstLocation.getTime()).thenReturn(0L);
+        when(firstLocation.hasSpeed()).thenReturn(true);
+        when(firstLocation.getSpeed()).thenReturn(1.4f);
+        locationDroid.onLocationChanged(firstLocation);
+        // an outlier 11 km away in 1 second is rejected and does not shorten the interval
+        when(secondLocation.getLatitude()).thenReturn(0.1d);
+        when(secondLocation.getAccuracy()).thenReturn(5f);
+        when(secondLocation.getTime()).thenReturn(1000L);
+        when(secondLocation.hasSpeed()).thenReturn(true);
+        when(secondLocation.getSpeed()).thenReturn(100f);
+        locationDroid.onLocationChanged(secondLocation);
+
+        assertThat(getBestLocation()).isSameAs(firstLocation);
+        verify(mockLocationManager, times(2)).requestLocationUpdates(eq(LocationManager.GPS_PROVIDER), anyLong(), anyFloat(), any(LocationListener.class));
+    }
+
     @NonNull
     private Context buildContext(LocationManager mockLocationManager) {
         // Mock a context using the mocked location manager
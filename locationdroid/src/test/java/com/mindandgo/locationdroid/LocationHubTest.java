@@ -0,0 +1,145 @@
+package com.mindandgo.locationdroid;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static com.mindandgo.locationdroid.Geodesy.METERS_PER_DEGREE;
+
+public class LocationHubTest {
+
+    private LocationHub hub;
+    private RecordingSubscriber near;
+    private RecordingSubscriber far;
+
+    @Before
+    public void init() {
+        LocationManager mockLocationManager = mock(LocationManager.class);
+        when(mockLocationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)).thenReturn(true);
+        Context mockContext = mock(Context.class);
+        when(mockContext.getSystemService(Context.LOCATION_SERVICE)).thenReturn(mockLocationManager);
+
+        hub = new LocationHub(mockContext);
+        near = new RecordingSubscriber();
+        far = new RecordingSubscriber();
+    }
+
+    @Test
+    public void shouldRegisterWithTightestRequirement() throws SecurityException {
+        hub.subscribe(far, 100f, 60f);
+        assertThat(hub.isStarted()).isTrue();
+        assertThat(hub.getDistanceBetweenUpdates()).isEqualTo(100f);
+
+        hub.subscribe(near, 5f, 30f);
+        assertThat(hub.getDistanceBetweenUpdates()).isEqualTo(5f);
+        assertThat(hub.getMaxTimeBetweenUpdates()).isEqualTo(30f);
+
+        // relaxed when the most demanding subscriber leaves
+        hub.unsubscribe(near);
+        assertThat(hub.getDistanceBetweenUpdates()).isEqualTo(100f);
+        assertThat(hub.getMaxTimeBetweenUpdates()).isEqualTo(60f);
+
+        hub.unsubscribe(far);
+        assertThat(hub.isStarted()).isFalse();
+        assertThat(hub.getSubscriberCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldFanOutAccordingSubscriberThresholds() throws SecurityException {
+        hub.subscribe(near, 5f, 30f);
+        hub.subscribe(far, 100f, 60f);
+
+        hub.onLocationChanged(location(0d, 0L));
+        assertThat(near.received).hasSize(1);
+        assertThat(far.received).hasSize(1);
+
+        // 10 meters further
+        hub.onLocationChanged(location(10d, 1000L));
+        assertThat(near.received).hasSize(2);
+        assertThat(far.received).hasSize(1);
+
+        // 61 seconds later
+        hub.onLocationChanged(location(10d, 62000L));
+        assertThat(near.received).hasSize(3);
+        assertThat(far.received).hasSize(2);
+    }
+
+    @Test
+    public void shouldSerializeDeliveriesOfSubscriber() throws SecurityException, InterruptedException {
+        final CountDownLatch inside = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger received = new AtomicInteger();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        hub.subscribe(new LocationSubscriber() {
+            @Override
+            public void onNewLocation(Location location) {
+                maxActive.set(Math.max(maxActive.get(), active.incrementAndGet()));
+                if (received.incrementAndGet() == 1) {
+                    inside.countDown();
+                    try {
+                        release.await(1, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                active.decrementAndGet();
+            }
+        }, 5f, 30f);
+
+        // two deliveries at once, as with a multi-threaded callback executor
+        Thread first = deliverOnThread(location(0d, 0L));
+        assertThat(inside.await(1, TimeUnit.SECONDS)).isTrue();
+        Thread second = deliverOnThread(location(100d, 1000L));
+        second.join(100L);
+        assertThat(received.get()).isEqualTo(1);
+
+        release.countDown();
+        first.join();
+        second.join();
+        assertThat(received.get()).isEqualTo(2);
+        assertThat(maxActive.get()).isEqualTo(1);
+    }
+
+    private Thread deliverOnThread(final Location location) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                hub.onNewLocation(location);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private Location location(double northMeters, long time) {
+        Location location = mock(Location.class);
+        when(location.getLatitude()).thenReturn(45d + northMeters / METERS_PER_DEGREE);
+        when(location.getLongitude()).thenReturn(5d);
+        when(location.getAccuracy()).thenReturn(5f);
+        when(location.getTime()).thenReturn(time);
+        return location;
+    }
+
+    private static class RecordingSubscriber implements LocationSubscriber {
+
+        private final List<Location> received = new ArrayList<>();
+
+        @Override
+        public void onNewLocation(Location location) {
+            received.add(location);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static com.mindandgo.locationdroid.Geodesy.METERS_PER_DEGREE;
+
+public class LocationKalmanFilterTest {
+
+    private LocationKalmanFilter filter;
+    private LocationSample fix;
+    private LocationSample estimate;
+
+    @Before
+    public void init() {
+        filter = new LocationKalmanFilter();
+        fix = new LocationSample();
+        estimate = new LocationSample();
+    }
+
+    @Test
+    public void shouldSmoothStationaryFixes() {
+        Random random = new Random(1L);
+        for (int i = 0; i < 60; i++) {
+            double error = random.nextGaussian() * 20d / METERS_PER_DEGREE;
+            filter.update(fix.set(45d + error, 5d, 20f, true, 0f, i * 1000L, LocationSample.PROVIDER_NETWORK));
+        }
+        filter.getEstimate(estimate);
+
+        // the estimate is far closer than the accuracy of a single fix
+        assertThat(Math.abs(estimate.latitude - 45d) * METERS_PER_DEGREE).isLessThan(10d);
+        assertThat(estimate.accuracy).isLessThan(20f);
+    }
+
+    @Test
+    public void shouldWeightFixesByAccuracy() {
+        filter.update(fix.set(45d, 5d, 3f, true, 0f, 0L, LocationSample.PROVIDER_GPS));
+        // a bad network fix 100 meters away
+        filter.update(fix.set(45d + 100d / METERS_PER_DEGREE, 5d, 300f, true, 0f, 1000L, LocationSample.PROVIDER_NETWORK));
+        filter.getEstimate(estimate);
+
+        assertThat((estimate.latitude - 45d) * METERS_PER_DEGREE).isLessThan(5d);
+        assertThat(estimate.provider).isEqualTo(LocationSample.PROVIDER_NETWORK);
+    }
+
+    @Test
+    public void shouldEstimateSpeed() {
+        for (int i = 0; i < 30; i++) {
+            filter.update(fix.set(45d + i * 10d / METERS_PER_DEGREE, 5d, 5f, true, 0f, i * 1000L, LocationSample.PROVIDER_GPS));
+        }
+        filter.getEstimate(estimate);
+
+        assertThat(estimate.speed).isBetween(9f, 11f);
+    }
+
+    @Test
+    public void shouldIgnoreOlderFixes() {
+        filter.update(fix.set(45d, 5d, 5f, true, 0f, 2000L, LocationSample.PROVIDER_GPS));
+        assertThat(filter.update(fix.set(46d, 5d, 5f, true, 0f, 1000L, LocationSample.PROVIDER_PASSIVE))).isFalse();
+        assertThat(filter.getEstimate(estimate).latitude).isEqualTo(45d);
+    }
+
+    @Test
+    public void shouldIgnoreSameFixAgain() {
+        filter.update(fix.set(45d, 5d, 10f, true, 0f, 0L, LocationSample.PROVIDER_GPS));
+        filter.update(fix.set(45d, 5d, 10f, true, 0f, 1000L, LocationSample.PROVIDER_GPS));
+        float accuracy = filter.getEstimate(estimate).accuracy;
+
+        // the passive provider delivers the last GPS fix again
+        assertThat(filter.update(fix.set(45d, 5d, 10f, true, 0f, 1000L, LocationSample.PROVIDER_GPS))).isFalse();
+        assertThat(filter.getEstimate(estimate).accuracy).isEqualTo(accuracy);
+        // a network fix at the same time is new information
+        assertThat(filter.update(fix.set(45d, 5d, 10f, true, 0f, 1000L, LocationSample.PROVIDER_NETWORK))).isTrue();
+    }
+}
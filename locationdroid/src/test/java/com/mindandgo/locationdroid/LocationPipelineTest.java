@@ -0,0 +1,73 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static com.mindandgo.locationdroid.Fixes.fix;
+
+public class LocationPipelineTest {
+
+    private LocationPipeline pipeline;
+    private final LocationSample sample = new LocationSample();
+
+    @Before
+    public void setUp() {
+        pipeline = new LocationPipeline(new LocationSelector());
+    }
+
+    @Test
+    public void shouldSelectAndRejectImplausibleFixes() {
+        pipeline.setPlausibilityFilter(new PlausibilityFilter());
+
+        assertThat(pipeline.offer(fix(sample, 45d, 10f, 0L), 0L)).isTrue();
+        assertThat(pipeline.getDecision()).isEqualTo(LocationSelector.ACCEPTED_FIRST);
+        assertThat(pipeline.offer(fix(sample, 45d, 20f, 10L), 10L)).isFalse();
+        assertThat(pipeline.getDecision()).isEqualTo(LocationSelector.REJECTED);
+        // 11 km in 10 milliseconds
+        assertThat(pipeline.offer(fix(sample, 45.1d, 5f, 20L), 20L)).isFalse();
+        assertThat(pipeline.getDecision()).isEqualTo(LocationSelector.REJECTED_IMPLAUSIBLE);
+    }
+
+    @Test
+    public void shouldDeliverFusedEstimate() {
+        pipeline.setFusionFilter(new LocationKalmanFilter());
+
+        assertThat(pipeline.offer(fix(sample, 45d, 10f, 0L), 0L)).isTrue();
+        assertThat(pipeline.offer(fix(sample, 45.0001d, 10f, 1000L), 1000L)).isTrue();
+        assertThat(pipeline.getDecision()).isEqualTo(LocationSelector.ACCEPTED_FUSED);
+        // the estimate is between the both fixes
+        assertThat(sample.latitude).isBetween(45d, 45.0001d);
+    }
+
+    @Test
+    public void shouldTrackProviderHealthWithFusion() {
+        ProviderHealth health = new ProviderHealth(2, 0.5f, 1000L, 1000L);
+        health.onRegistered(LocationSample.PROVIDER_GPS, 0L);
+        health.onRegistered(LocationSample.PROVIDER_NETWORK, 0L);
+        pipeline.setFusionFilter(new LocationKalmanFilter()).setProviderHealth(health);
+
+        pipeline.offer(fix(sample, 45d, 10f, 0L), 0L);
+        pipeline.offer(fix(sample, 45d, 10f, 1000L), 1000L);
+
+        assertThat(health.getFixCount(LocationSample.PROVIDER_GPS)).isEqualTo(2L);
+        assertThat(health.getSelectedCount(LocationSample.PROVIDER_GPS)).isEqualTo(2L);
+    }
+
+    @Test
+    public void shouldNotDeliverSamePlaceWhenStationary() {
+        pipeline.setStationaryDetector(new StationaryDetector(50f, 1000L));
+
+        assertThat(pipeline.offer(fix(sample, 45d, 5f, 0L), 0L)).isTrue();
+        assertThat(pipeline.isRegistrationChanged()).isFalse();
+        // the first stationary fix is delivered and changes the registration
+        assertThat(pipeline.offer(fix(sample, 45d, 5f, 1000L), 1000L)).isTrue();
+        assertThat(pipeline.isRegistrationChanged()).isTrue();
+        assertThat(pipeline.isStationary()).isTrue();
+        assertThat(pipeline.offer(fix(sample, 45d, 5f, 2000L), 2000L)).isFalse();
+        assertThat(pipeline.getDecision()).isEqualTo(LocationSelector.ACCEPTED_ACCURACY);
+
+        pipeline.reset();
+        assertThat(pipeline.isStationary()).isFalse();
+    }
+}
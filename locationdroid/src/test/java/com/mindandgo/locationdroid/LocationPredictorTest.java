@@ -0,0 +1,159 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.within;
+import static com.mindandgo.locationdroid.Fixes.STEP;
+import static com.mindandgo.locationdroid.Fixes.fix;
+
+public class LocationPredictorTest {
+
+    private static final long SECOND = 1000000000L;
+
+    private LocationPredictor predictor;
+    private final LocationSample sample = new LocationSample();
+    private final LocationSample prediction = new LocationSample();
+
+    @Before
+    public void setUp() {
+        predictor = new LocationPredictor(10 * SECOND, 2f, 1f);
+    }
+
+    @Test
+    public void shouldNotPredictWithoutLocation() {
+        assertThat(predictor.predict(0L, prediction)).isFalse();
+
+        predictor.update(fix(sample, 0d, 5f, 0f, 0L), 0L);
+        predictor.reset();
+        assertThat(predictor.predict(0L, prediction)).isFalse();
+    }
+
+    @Test
+    public void shouldExtrapolateAlongVelocity() {
+        predictor.update(fix(sample, 0d, 5f, 0f, 0L), 0L);
+        predictor.update(fix(sample, STEP, 5f, 0f, 1000L), SECOND);
+
+        assertThat(predictor.predict(SECOND + SECOND / 2, prediction)).isTrue();
+        assertThat(prediction.latitude).isCloseTo(1.5d * STEP, within(1e-9d));
+        assertThat(prediction.longitude).isCloseTo(0d, within(1e-9d));
+        assertThat(prediction.speed).isCloseTo(11.132f, within(0.01f));
+        assertThat(prediction.time).isEqualTo(1500L);
+    }
+
+    @Test
+    public void shouldUseReportedSpeed() {
+        predictor.update(fix(sample, 0d, 5f, 0f, 0L), 0L);
+        predictor.update(fix(sample, STEP, 5f, 22.264f, 1000L), SECOND);
+
+        predictor.predict(2 * SECOND, prediction);
+        assertThat(prediction.latitude).isCloseTo(3 * STEP, within(1e-7d));
+    }
+
+    @Test
+    public void shouldStopExtrapolatingAfterMaxTime() {
+        predictor.update(fix(sample, 0d, 5f, 0f, 0L), 0L);
+        predictor.update(fix(sample, STEP, 5f, 0f, 1000L), SECOND);
+
+        predictor.predict(21 * SECOND, prediction);
+        assertThat(prediction.latitude).isCloseTo(11 * STEP, within(1e-9d));
+        assertThat(prediction.speed).isEqualTo(0f);
+    }
+
+    @Test
+    public void shouldNotMoveWithinAccuracies() {
+        // 11 meters of jitter with 10 meters accuracies
+        predictor.update(fix(sample, 0d, 10f, 0f, 0L), 0L);
+        predictor.update(fix(sample, STEP, 10f, 0f, 1000L), SECOND);
+
+        predictor.predict(2 * SECOND, prediction);
+        assertThat(prediction.latitude).isEqualTo(STEP);
+        assertThat(prediction.speed).isEqualTo(0f);
+    }
+
+    @Test
+    public void shouldMeasureWalkingWithinAccuracies() {
+        // 1.4 meters/second with 5 meters accuracies, without reported speed
+        for (int i = 0; i <= 12; i++) {
+            predictor.update(fix(sample, i * STEP / 8, 5f, 0f, i * 1000L), i * SECOND);
+        }
+
+        predictor.predict(13 * SECOND, prediction);
+        assertThat(prediction.latitude).isCloseTo(13 * STEP / 8, within(1e-9d));
+        assertThat(prediction.speed).isCloseTo(1.3915f, within(0.001f));
+    }
+
+    @Test
+    public void shouldUseReportedWalkingSpeedWithinAccuracies() {
+        predictor.update(fix(sample, 0d, 5f, 1.3915f, 0L), 0L);
+        predictor.update(fix(sample, STEP / 8, 5f, 1.3915f, 1000L), SECOND);
+
+        predictor.predict(2 * SECOND, prediction);
+        assertThat(prediction.latitude).isCloseTo(2 * STEP / 8, within(1e-9d));
+    }
+
+    @Test
+    public void shouldNotUseProviderChangeForVelocity() {
+        predictor.update(fix(sample, 0d, 5f, 0f, 0L), 0L);
+        predictor.update(sample.set(STEP, 0d, 5f, true, 0f, 1000L, LocationSample.PROVIDER_NETWORK), SECOND);
+
+        predictor.predict(2 * SECOND, prediction);
+        assertThat(prediction.latitude).isEqualTo(STEP);
+        assertThat(prediction.speed).isEqualTo(0f);
+    }
+
+    @Test
+    public void shouldGrowRadiusAndSnapBackOnFix() {
+        predictor.update(fix(sample, 0d, 5f, 0f, 0L), 0L);
+
+        predictor.predict(0L, prediction);
+        assertThat(prediction.accuracy).isEqualTo(5f);
+        predictor.predict(2 * SECOND, prediction);
+        // 5 + 1 * 2 + 0.5 * 2 * 2^2
+        assertThat(prediction.accuracy).isCloseTo(11f, within(1e-4f));
+
+        predictor.update(fix(sample, 0d, 5f, 0f, 2000L), 2 * SECOND);
+        predictor.predict(2 * SECOND, prediction);
+        assertThat(prediction.accuracy).isEqualTo(5f);
+    }
+
+    @Test
+    public void shouldNotUseOldLocationForVelocity() {
+        predictor.update(fix(sample, 0d, 5f, 0f, 0L), 0L);
+        predictor.update(fix(sample, STEP, 5f, 0f, 120000L), 120 * SECOND);
+
+        predictor.predict(125 * SECOND, prediction);
+        assertThat(prediction.latitude).isEqualTo(STEP);
+    }
+
+    @Test
+    public void shouldPredictConsistentStateDuringUpdates() throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicBoolean torn = new AtomicBoolean(false);
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                LocationSample result = new LocationSample();
+                while (running.get()) {
+                    // not after the last update: the last location, never a mix of two
+                    if (predictor.predict(0L, result) && result.latitude != result.longitude) {
+                        torn.set(true);
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 200000; i++) {
+            double coordinate = (i % 2) * STEP;
+            sample.set(coordinate, coordinate, 5f, true, 0f, i * 1000L, LocationSample.PROVIDER_GPS);
+            predictor.update(sample, i * SECOND);
+        }
+        running.set(false);
+        reader.join();
+
+        assertThat(torn.get()).isFalse();
+    }
+}
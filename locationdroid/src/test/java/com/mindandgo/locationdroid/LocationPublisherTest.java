@@ -0,0 +1,226 @@
+package com.mindandgo.locationdroid;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LocationPublisherTest {
+
+    private LocationPublisher publisher;
+    // runs the delivery tasks only when asked, like a busy consumer thread
+    private ManualExecutor slowExecutor;
+
+    @Before
+    public void init() {
+        LocationManager mockLocationManager = mock(LocationManager.class);
+        when(mockLocationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)).thenReturn(true);
+        Context mockContext = mock(Context.class);
+        when(mockContext.getSystemService(Context.LOCATION_SERVICE)).thenReturn(mockLocationManager);
+
+        publisher = new LocationPublisher(mockContext);
+        slowExecutor = new ManualExecutor();
+    }
+
+    @Test
+    public void shouldDeliverOnlyRequestedLocations() throws SecurityException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        publisher.subscribe(subscriber, slowExecutor, LocationPublisher.Overflow.ERROR, 10);
+        assertThat(publisher.isStarted()).isTrue();
+
+        publisher.onLocationChanged(location(0L));
+        publisher.onLocationChanged(location(1000L));
+        slowExecutor.runAll();
+        assertThat(subscriber.received).hasSize(1);
+
+        subscriber.subscription.request(5);
+        slowExecutor.runAll();
+        assertThat(subscriber.received).hasSize(2);
+    }
+
+    @Test
+    public void shouldConflateToLatest() throws SecurityException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber, slowExecutor);
+
+        Location latest = location(2000L);
+        publisher.onLocationChanged(location(0L));
+        publisher.onLocationChanged(location(1000L));
+        publisher.onLocationChanged(latest);
+        slowExecutor.runAll();
+
+        assertThat(subscriber.received).containsExactly(latest);
+        assertThat(publisher.getDroppedCount()).isEqualTo(2L);
+    }
+
+    @Test
+    public void shouldNotStallFastSubscriber() throws SecurityException {
+        RecordingSubscriber slow = new RecordingSubscriber(Long.MAX_VALUE);
+        RecordingSubscriber fast = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(slow, slowExecutor, LocationPublisher.Overflow.DROP, 2);
+        publisher.subscribe(fast, new DirectExecutor(), LocationPublisher.Overflow.DROP, 2);
+
+        for (int i = 0; i < 5; i++) {
+            publisher.onLocationChanged(location(i * 1000L));
+        }
+        assertThat(fast.received).hasSize(5);
+        assertThat(slow.received).isEmpty();
+
+        slowExecutor.runAll();
+        assertThat(slow.received).hasSize(2);
+        assertThat(publisher.getDroppedCount()).isEqualTo(3L);
+    }
+
+    @Test
+    public void shouldSignalOverflowAndCancel() throws SecurityException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber, slowExecutor, LocationPublisher.Overflow.ERROR, 2);
+
+        publisher.onLocationChanged(location(0L));
+        publisher.onLocationChanged(location(1000L));
+        publisher.onLocationChanged(location(2000L));
+        slowExecutor.runAll();
+
+        assertThat(subscriber.error).isInstanceOf(LocationPublisher.OverflowException.class);
+        assertThat(subscriber.received).isEmpty();
+        assertThat(publisher.getSubscriberCount()).isEqualTo(0);
+        assertThat(publisher.isStarted()).isFalse();
+    }
+
+    @Test
+    public void shouldCompleteOnStop() throws SecurityException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber, new DirectExecutor());
+        publisher.onLocationChanged(location(0L));
+
+        // a late subscriber receives the current location first
+        RecordingSubscriber late = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(late, new DirectExecutor());
+        assertThat(late.received).hasSize(1);
+
+        publisher.stop();
+        assertThat(subscriber.completed).isTrue();
+        assertThat(late.completed).isTrue();
+        assertThat(publisher.getSubscriberCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldSubscribeThroughPublisher() throws SecurityException {
+        LocationPublisher.Publisher asPublisher = publisher.asPublisher();
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        asPublisher.subscribe(subscriber, new DirectExecutor());
+
+        assertThat(publisher.getSubscriberCount()).isEqualTo(1);
+        assertThat(publisher.isStarted()).isTrue();
+    }
+
+    @Test
+    public void shouldRejectInvalidRequest() throws SecurityException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber, new DirectExecutor());
+
+        subscriber.subscription.request(0);
+        assertThat(subscriber.error).isInstanceOf(IllegalArgumentException.class);
+        assertThat(publisher.getSubscriberCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotQueueCurrentLocationAfterNewerOne() throws SecurityException {
+        final Location older = location(0L);
+        final Location newer = location(1000L);
+        Context mockContext = mock(Context.class);
+        when(mockContext.getSystemService(Context.LOCATION_SERVICE)).thenReturn(mock(LocationManager.class));
+        // a newer location is published between the subscription and the read of the current one
+        publisher = new LocationPublisher(mockContext) {
+            @Override
+            public Location getCurrentLocation() {
+                onNewLocation(newer);
+                return older;
+            }
+        };
+
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber, new DirectExecutor());
+        publisher.onNewLocation(newer);
+
+        assertThat(subscriber.received).containsExactly(newer);
+    }
+
+    private Location location(long time) {
+        Location location = mock(Location.class);
+        when(location.getTime()).thenReturn(time);
+        return location;
+    }
+
+    private static final class RecordingSubscriber implements LocationPublisher.Subscriber {
+
+        private final long initialRequest;
+        private final List<Location> received = new ArrayList<>();
+        private LocationPublisher.Subscription subscription;
+        private Throwable error;
+        private boolean completed = false;
+
+        private RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(LocationPublisher.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(Location location) {
+            received.add(location);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private static final class ManualExecutor implements Executor {
+
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        private void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static final class DirectExecutor implements Executor {
+
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class LocationSelectorTest {
+
+    private LocationSelector selector;
+    private LocationSample sample;
+
+    @Before
+    public void init() {
+        selector = new LocationSelector();
+        sample = new LocationSample();
+    }
+
+    @Test
+    public void shouldSelectSampleWithBestAccuracy() {
+        // Give a medium accuracy sample
+        assertThat(selector.offer(sample.set(1d, 1d, 10f, true, 0f, 0L, LocationSample.PROVIDER_NETWORK))).isTrue();
+
+        // Give a bad accuracy sample
+        assertThat(selector.offer(sample.set(2d, 2d, 20f, true, 0f, 0L, LocationSample.PROVIDER_NETWORK))).isFalse();
+        assertThat(selector.getCurrent().latitude).isEqualTo(1d);
+
+        // Give a good accuracy sample
+        assertThat(selector.offer(sample.set(3d, 3d, 2f, true, 0f, 0L, LocationSample.PROVIDER_GPS))).isTrue();
+        assertThat(selector.getCurrent().latitude).isEqualTo(3d);
+        assertThat(selector.getCurrent().provider).isEqualTo(LocationSample.PROVIDER_GPS);
+    }
+
+    @Test
+    public void shouldSelectSampleAccordingTimeAndSpeed() {
+        selector.offer(sample.set(1d, 1d, 2f, true, 0f, 2000L, LocationSample.PROVIDER_GPS));
+
+        // 10(meters) / 1.4 (meter/second) = 7.14 > timeDifference (= 3)
+        assertThat(selector.offer(sample.set(2d, 2d, 20f, true, 1.4f, 5000L, LocationSample.PROVIDER_NETWORK))).isFalse();
+
+        // 10(meters) / 20 (meter/second) = 0.5 < timeDifference (= 5)
+        assertThat(selector.offer(sample.set(2d, 2d, 20f, true, 20f, 7000L, LocationSample.PROVIDER_NETWORK))).isTrue();
+        assertThat(selector.getCurrent().time).isEqualTo(7000L);
+    }
+
+    @Test
+    public void shouldGiveDecisionReason() {
+        assertThat(selector.decide(sample.set(1d, 1d, 10f, true, 0f, 0L, LocationSample.PROVIDER_GPS)))
+                .isEqualTo(LocationSelector.ACCEPTED_FIRST);
+        selector.offer(sample);
+
+        assertThat(selector.decide(sample.set(1d, 1d, 5f, true, 0f, 1L, LocationSample.PROVIDER_GPS)))
+                .isEqualTo(LocationSelector.ACCEPTED_ACCURACY);
+        assertThat(selector.decide(sample.set(1d, 1d, 20f, true, 0f, 1L, LocationSample.PROVIDER_NETWORK)))
+                .isEqualTo(LocationSelector.REJECTED);
+        // after the default max time of 30 seconds
+        assertThat(selector.decide(sample.set(1d, 1d, 20f, true, 0f, 31000L, LocationSample.PROVIDER_NETWORK)))
+                .isEqualTo(LocationSelector.ACCEPTED_TIME);
+    }
+
+    @Test
+    public void shouldClassifyDecisions() {
+        assertThat(LocationSelector.isAcceptedDecision(LocationSelector.ACCEPTED_TIME)).isTrue();
+        assertThat(LocationSelector.isAcceptedDecision(LocationSelector.ACCEPTED_FUSED)).isTrue();
+        assertThat(LocationSelector.isAcceptedDecision(LocationSelector.REJECTED)).isFalse();
+        assertThat(LocationSelector.isAcceptedDecision(LocationSelector.REJECTED_IMPLAUSIBLE)).isFalse();
+    }
+
+    @Test
+    public void shouldUseDefaultMaxTimeWithoutSpeed() {
+        assertThat(selector.getMaxTimeBetweenUpdates(0f)).isEqualTo(LocationSelector.DEFAULT_MAX_TIME);
+        assertThat(selector.getMaxTimeBetweenUpdates(5f)).isEqualTo(2f);
+    }
+
+    @Test
+    public void shouldCompareAccuracyAndTime() {
+        LocationSample older = new LocationSample().set(0d, 0d, 5f, true, 0f, 1L, LocationSample.PROVIDER_GPS);
+        LocationSample newer = new LocationSample().set(0d, 0d, 5f, true, 0f, 2L, LocationSample.PROVIDER_NETWORK);
+        assertThat(LocationSelector.accuracyAndTimeComparator(older, newer)).isSameAs(newer);
+
+        // the newest sample is the less accurate one
+        newer.accuracy = 50f;
+        assertThat(LocationSelector.accuracyAndTimeComparator(older, newer)).isNull();
+    }
+}
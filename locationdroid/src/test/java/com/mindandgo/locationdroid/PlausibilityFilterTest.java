@@ -0,0 +1,63 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static com.mindandgo.locationdroid.Fixes.STEP;
+import static com.mindandgo.locationdroid.Fixes.fix;
+
+public class PlausibilityFilterTest {
+
+
+    private PlausibilityFilter filter;
+    private final LocationSample sample = new LocationSample();
+
+    @Before
+    public void setUp() {
+        filter = new PlausibilityFilter();
+    }
+
+    @Test
+    public void shouldRejectJump() {
+        assertThat(filter.offer(fix(sample, 0d, 5f, 0L))).isTrue();
+        assertThat(filter.offer(fix(sample, STEP, 5f, 1000L))).isTrue();
+
+        // 2 km in one second
+        assertThat(filter.offer(fix(sample, 0.018d, 30f, 2000L))).isFalse();
+        assertThat(filter.offer(fix(sample, 2 * STEP, 5f, 2000L))).isTrue();
+        assertThat(filter.getRejectedCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void shouldExplainMovementByAccuracy() {
+        assertThat(filter.offer(fix(sample, 0d, 500f, 0L))).isTrue();
+
+        // 1 km in one second, within the accuracy of both fixes
+        assertThat(filter.offer(fix(sample, 0.009d, 600f, 1000L))).isTrue();
+    }
+
+    @Test
+    public void shouldRejectImpossibleAcceleration() {
+        filter.offer(fix(sample, 0d, 1f, 0L));
+        filter.offer(fix(sample, 0d, 1f, 1000L));
+
+        // from 0 to about 31 m/s in one second
+        assertThat(filter.offer(fix(sample, 3 * STEP, 1f, 2000L))).isFalse();
+        // the same movement in 10 seconds is plausible
+        assertThat(filter.offer(fix(sample, 3 * STEP, 1f, 11000L))).isTrue();
+    }
+
+    @Test
+    public void shouldRestartAfterRunOfRejections() {
+        filter = new PlausibilityFilter(4, 70f, 10f, 3);
+        filter.offer(fix(sample, 0d, 5f, 0L));
+
+        // the device really moved: the third fix away restarts the window
+        assertThat(filter.offer(fix(sample, 1d, 5f, 1000L))).isFalse();
+        assertThat(filter.offer(fix(sample, 1d, 5f, 2000L))).isFalse();
+        assertThat(filter.offer(fix(sample, 1d, 5f, 3000L))).isTrue();
+        assertThat(filter.offer(fix(sample, 1d + STEP, 5f, 4000L))).isTrue();
+        assertThat(filter.getRejectedCount()).isEqualTo(2L);
+    }
+}
@@ -0,0 +1,86 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class ProviderHealthTest {
+
+    private static final int GPS = LocationSample.PROVIDER_GPS;
+    private static final int NETWORK = LocationSample.PROVIDER_NETWORK;
+
+    private ProviderHealth health;
+
+    @Before
+    public void setUp() {
+        health = new ProviderHealth(10, 0.1f, 1000L, 4000L);
+        health.onRegistered(GPS, 0L);
+        health.onRegistered(NETWORK, 0L);
+    }
+
+    @Test
+    public void shouldSuspendProviderRarelySelected() {
+        for (int i = 0; i < 10; i++) {
+            health.onFix(GPS, 50f, false, i);
+            health.onFix(NETWORK, 20f, true, i);
+        }
+
+        assertThat(health.update(10L)).isTrue();
+        assertThat(health.isSuspended(GPS)).isTrue();
+        assertThat(health.isSuspended(NETWORK)).isFalse();
+    }
+
+    @Test
+    public void shouldNotSuspendLastProvider() {
+        health.onUnregistered(NETWORK, 0L);
+        for (int i = 0; i < 10; i++) {
+            health.onFix(GPS, 50f, false, i);
+        }
+
+        assertThat(health.update(10L)).isFalse();
+        assertThat(health.isSuspended(GPS)).isFalse();
+    }
+
+    @Test
+    public void shouldResumeProviderAfterBackoff() {
+        suspendGps(0L);
+        health.onUnregistered(GPS, 10L);
+        assertThat(health.getNextResumeTime()).isEqualTo(1010L);
+
+        assertThat(health.update(500L)).isFalse();
+        assertThat(health.update(1010L)).isTrue();
+        assertThat(health.isSuspended(GPS)).isFalse();
+        assertThat(health.getNextResumeTime()).isEqualTo(-1L);
+
+        // the backoff doubles at the next suspension
+        health.onRegistered(GPS, 1010L);
+        suspendGps(1010L);
+        assertThat(health.update(2020L)).isFalse();
+        assertThat(health.update(3020L)).isTrue();
+    }
+
+    @Test
+    public void shouldRecordStatistics() {
+        health.onFix(GPS, 3f, true, 1500L);
+        health.onFix(GPS, 15f, false, 2000L);
+        health.onFix(GPS, 500f, false, 2500L);
+
+        assertThat(health.getTimeToFirstFix(GPS)).isEqualTo(1500L);
+        assertThat(health.getTimeToFirstFix(NETWORK)).isEqualTo(-1L);
+        assertThat(health.getFixCount(GPS)).isEqualTo(3L);
+        assertThat(health.getSelectedCount(GPS)).isEqualTo(1L);
+        assertThat(health.getFixRate(GPS, 60000L)).isEqualTo(3f);
+        assertThat(health.getAccuracyHistogram(GPS, new long[ProviderHealth.ACCURACY_BUCKET_COUNT]))
+                .containsExactly(1L, 0L, 1L, 0L, 0L, 0L, 1L);
+    }
+
+    private void suspendGps(long time) {
+        for (int i = 0; i < 10; i++) {
+            health.onFix(GPS, 50f, false, time);
+            health.onFix(NETWORK, 20f, true, time);
+        }
+        health.update(time + 10L);
+        assertThat(health.isSuspended(GPS)).isTrue();
+    }
+}
@@ -0,0 +1,54 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static com.mindandgo.locationdroid.Fixes.STEP;
+import static com.mindandgo.locationdroid.Fixes.fix;
+
+public class StationaryDetectorTest {
+
+
+    private StationaryDetector detector;
+    private final LocationSample sample = new LocationSample();
+
+    @Before
+    public void setUp() {
+        detector = new StationaryDetector(50f, 60000L);
+    }
+
+    @Test
+    public void shouldBecomeStationaryWithoutMovement() {
+        assertThat(detector.update(fix(sample, 0d, 5f, 0L))).isFalse();
+        assertThat(detector.update(fix(sample, STEP, 5f, 30000L))).isFalse();
+        assertThat(detector.isStationary()).isFalse();
+
+        assertThat(detector.update(fix(sample, 2 * STEP, 5f, 60000L))).isTrue();
+        assertThat(detector.isStationary()).isTrue();
+        assertThat(detector.update(fix(sample, STEP, 5f, 90000L))).isFalse();
+    }
+
+    @Test
+    public void shouldRestartWindowOnMovement() {
+        detector.update(fix(sample, 0d, 5f, 0L));
+        // about 110 meters
+        detector.update(fix(sample, 10 * STEP, 5f, 50000L));
+        assertThat(detector.update(fix(sample, 10 * STEP, 5f, 100000L))).isFalse();
+        assertThat(detector.update(fix(sample, 10 * STEP, 5f, 110000L))).isTrue();
+    }
+
+    @Test
+    public void shouldMoveAgainBeyondAccuracy() {
+        detector.update(fix(sample, 0d, 5f, 0L));
+        detector.update(fix(sample, 0d, 5f, 60000L));
+
+        // a network fix 110 meters away with an accuracy of 100 meters
+        assertThat(detector.update(fix(sample, 10 * STEP, 100f, 70000L))).isFalse();
+        assertThat(detector.isStationary()).isTrue();
+
+        // 330 meters away
+        assertThat(detector.update(fix(sample, 30 * STEP, 100f, 80000L))).isTrue();
+        assertThat(detector.isStationary()).isFalse();
+    }
+}
@@ -0,0 +1,103 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.within;
+
+public class TraceReaderTest {
+
+    // 2016-05-20T10:00:00Z
+    private static final long TIME = 1463738400000L;
+
+    private final LocationSample sample = new LocationSample();
+
+    @Test
+    public void shouldReadCsvTrace() throws IOException {
+        TraceReader reader = new CsvTraceReader(new StringReader(
+                "time,provider,latitude,longitude,accuracy,speed\n"
+                        + "1463738400000,gps,48.8566,2.3522,5.0,1.5\n"
+                        + "# comment\n"
+                        + "2016-05-20T10:00:01.500+02:00,network,48.8567,2.3523,,\n"));
+
+        assertThat(reader.read(sample)).isTrue();
+        assertThat(sample.time).isEqualTo(TIME);
+        assertThat(sample.provider).isEqualTo(LocationSample.PROVIDER_GPS);
+        assertThat(sample.latitude).isEqualTo(48.8566d);
+        assertThat(sample.accuracy).isEqualTo(5f);
+        assertThat(sample.speed).isEqualTo(1.5f);
+
+        assertThat(reader.read(sample)).isTrue();
+        assertThat(sample.time).isEqualTo(TIME + 1500L - 7200000L);
+        assertThat(sample.provider).isEqualTo(LocationSample.PROVIDER_NETWORK);
+        assertThat(sample.hasAccuracy).isFalse();
+
+        assertThat(reader.read(sample)).isFalse();
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectMalformedCsv() throws IOException {
+        new CsvTraceReader(new StringReader("1463738400000,gps,abc,2.3522\n")).read(sample);
+    }
+
+    @Test
+    public void shouldReadNmeaTrace() throws IOException {
+        TraceReader reader = new NmeaTraceReader(new StringReader(
+                "$GPRMC,100000.00,A,4851.3960,N,00221.1320,E,2.0,90.0,200516,,,A*61\n"
+                        + "$GPGSA,A,3,01,02,03,,,,,,,,,,2.0,1.2,1.6\n"
+                        + "$GPGGA,100000.00,4851.3960,N,00221.1320,E,1,08,1.2,35.0,M,0.0,M,,*65\n"
+                        // wrong checksum
+                        + "$GPRMC,100001.00,A,4851.3960,N,00221.1320,E,2.0,90.0,200516,,,A*00\n"
+                        + "$GPRMC,100002.00,A,4851.3960,S,00221.1320,W,0.0,90.0,200516,,,A\n"
+                        + "$GPRMC,100003.00,V,,,,,,,200516,,,N\n"));
+
+        assertThat(reader.read(sample)).isTrue();
+        assertThat(sample.time).isEqualTo(TIME);
+        assertThat(sample.latitude).isCloseTo(48.8566d, within(1e-9));
+        assertThat(sample.longitude).isCloseTo(2.3522d, within(1e-9));
+        assertThat(sample.accuracy).isEqualTo(1.2f * NmeaTraceReader.UERE);
+        assertThat(sample.speed).isCloseTo(1.028888f, within(1e-5f));
+
+        assertThat(reader.read(sample)).isTrue();
+        assertThat(sample.time).isEqualTo(TIME + 2000L);
+        assertThat(sample.latitude).isCloseTo(-48.8566d, within(1e-9));
+        assertThat(sample.hasAccuracy).isFalse();
+
+        assertThat(reader.read(sample)).isFalse();
+    }
+
+    @Test
+    public void shouldReadGpxTrace() throws IOException {
+        TraceReader reader = new GpxTraceReader(new StringReader(
+                "<?xml version=\"1.0\"?>\n"
+                        + "<gpx version=\"1.0\"><!-- a <comment> --><trk><trkseg>\n"
+                        + "<trkpt lat=\"48.8566\" lon='2.3522'><time>2016-05-20T10:00:00Z</time>"
+                        + "<hdop>2</hdop><speed>3.5</speed></trkpt>\n"
+                        + "<trkpt lon=\"2.3523\" lat=\"48.8567\"><time>2016-05-20T10:00:05Z</time>"
+                        + "<src>network</src></trkpt>\n"
+                        + "<trkpt lat=\"48.8568\" lon=\"2.3524\"/>\n"
+                        + "</trkseg></trk></gpx>"));
+
+        assertThat(reader.read(sample)).isTrue();
+        assertThat(sample.latitude).isEqualTo(48.8566d);
+        assertThat(sample.longitude).isEqualTo(2.3522d);
+        assertThat(sample.time).isEqualTo(TIME);
+        assertThat(sample.accuracy).isEqualTo(2f * NmeaTraceReader.UERE);
+        assertThat(sample.speed).isEqualTo(3.5f);
+        assertThat(sample.provider).isEqualTo(LocationSample.PROVIDER_GPS);
+
+        assertThat(reader.read(sample)).isTrue();
+        assertThat(sample.longitude).isEqualTo(2.3523d);
+        assertThat(sample.time).isEqualTo(TIME + 5000L);
+        assertThat(sample.provider).isEqualTo(LocationSample.PROVIDER_NETWORK);
+        assertThat(sample.hasAccuracy).isFalse();
+
+        assertThat(reader.read(sample)).isTrue();
+        assertThat(sample.latitude).isEqualTo(48.8568d);
+
+        assertThat(reader.read(sample)).isFalse();
+    }
+}
@@ -0,0 +1,80 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class TraceReplayTest {
+
+    private static final String GPS = "time,provider,latitude,longitude,accuracy,speed\n"
+            + "1000,gps,1.0,1.0,5.0,0\n"
+            + "3000,gps,3.0,3.0,5.0,0\n"
+            + "5000,gps,5.0,5.0,4.0,0\n";
+
+    private static final String NETWORK = "time,provider,latitude,longitude,accuracy,speed\n"
+            + "2000,network,2.0,2.0,30.0,0\n"
+            + "4600,network,4.0,4.0,30.0,0\n";
+
+    @Test
+    public void shouldReplayMergedTracesByTime() throws IOException, InterruptedException {
+        final List<Long> accepted = new ArrayList<>();
+        TraceReplay replay = new TraceReplay(new LocationSelector(10f, 1.5f))
+                .setListener(new TraceReplay.Listener() {
+                    @Override
+                    public void onAccepted(LocationSample sample) {
+                        accepted.add(sample.time);
+                    }
+                });
+
+        TraceReplay.Result result = replay.replay(
+                new CsvTraceReader(new StringReader(GPS)),
+                new CsvTraceReader(new StringReader(NETWORK)));
+
+        // the first network fix is less accurate and too recent, the second one comes after the max time
+        assertThat(accepted).containsExactly(1000L, 3000L, 4600L, 5000L);
+        assertThat(result.getFixCount()).isEqualTo(5L);
+        assertThat(result.getFixCount(LocationSample.PROVIDER_NETWORK)).isEqualTo(2L);
+        assertThat(result.getAcceptedCount()).isEqualTo(4L);
+        assertThat(result.getDecisionCount(LocationSelector.ACCEPTED_TIME)).isEqualTo(1L);
+        assertThat(result.getDecisionCount(LocationSelector.ACCEPTED_ACCURACY)).isEqualTo(2L);
+        assertThat(result.getTraceDuration()).isEqualTo(4000L);
+        assertThat(replay.getTime()).isEqualTo(5000L);
+    }
+
+    @Test
+    public void shouldGiveSameResultAtAnySpeed() throws IOException, InterruptedException {
+        TraceReplay.Result fast = new TraceReplay(new LocationSelector())
+                .replay(new CsvTraceReader(new StringReader(GPS)));
+        TraceReplay.Result realTime = new TraceReplay(new LocationSelector())
+                .setSpeedFactor(1000f)
+                .replay(new CsvTraceReader(new StringReader(GPS)));
+
+        assertThat(realTime.getAcceptedCount()).isEqualTo(fast.getAcceptedCount());
+        assertThat(realTime.getDuration()).isGreaterThanOrEqualTo(4000000L);
+    }
+
+    @Test
+    public void shouldDropFixesOfSuspendedProviders() throws IOException, InterruptedException {
+        StringBuilder gps = new StringBuilder();
+        StringBuilder network = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            gps.append(i * 10 + 5).append(",gps,1.0,1.0,50.0,0\n");
+            network.append(i * 10).append(",network,1.0,1.0,10.0,0\n");
+        }
+        ProviderHealth health = new ProviderHealth(10, 0.1f, 100000L, 100000L);
+
+        TraceReplay.Result result = new TraceReplay(new LocationSelector())
+                .setProviderHealth(health)
+                .replay(new CsvTraceReader(new StringReader(gps.toString())),
+                        new CsvTraceReader(new StringReader(network.toString())));
+
+        assertThat(health.isSuspended(LocationSample.PROVIDER_GPS)).isTrue();
+        assertThat(result.getSuspendedCount()).isEqualTo(90L);
+        assertThat(result.getFixCount(LocationSample.PROVIDER_GPS)).isEqualTo(10L);
+    }
+}
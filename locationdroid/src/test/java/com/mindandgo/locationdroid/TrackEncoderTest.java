@@ -0,0 +1,106 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.within;
+import static com.mindandgo.locationdroid.Geodesy.METERS_PER_DEGREE;
+
+public class TrackEncoderTest {
+
+    // raw size of a location: latitude, longitude, time and accuracy
+    private static final int RAW_SIZE = 8 + 8 + 8 + 4;
+
+    private ByteArrayOutputStream bytes;
+    private LocationSample sample;
+
+    @Before
+    public void init() {
+        bytes = new ByteArrayOutputStream();
+        sample = new LocationSample();
+    }
+
+    @Test
+    public void shouldDecodeEveryLocationWithoutTolerance() throws IOException {
+        TrackEncoder encoder = new TrackEncoder(bytes);
+        Random random = new Random(1L);
+        double[] latitudes = new double[100];
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = 45d + random.nextGaussian() / 1000d;
+            encoder.write(sample.set(latitudes[i], -73.5d, 4.2f, true, 0f, 1480000000000L + i * 1000L,
+                    LocationSample.PROVIDER_GPS));
+        }
+        encoder.close();
+
+        TrackDecoder decoder = new TrackDecoder(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < latitudes.length; i++) {
+            assertThat(decoder.read(sample)).isTrue();
+            assertThat(sample.latitude).isCloseTo(latitudes[i], within(1e-6d));
+            assertThat(sample.longitude).isCloseTo(-73.5d, within(1e-6d));
+            assertThat(sample.accuracy).isCloseTo(4.2f, within(0.05f));
+            assertThat(sample.time).isEqualTo(1480000000000L + i * 1000L);
+        }
+        assertThat(decoder.read(sample)).isFalse();
+    }
+
+    @Test
+    public void shouldSimplifyStraightTrack() throws IOException {
+        TrackEncoder encoder = new TrackEncoder(bytes, 5f, TrackEncoder.DEFAULT_WINDOW_SIZE);
+        Random random = new Random(1L);
+        int count = 3600;
+        for (int i = 0; i < count; i++) {
+            // 15 m/s to the north with 1 meter of noise, a turn every 10 minutes
+            double north = (i % 600) * 15d + random.nextGaussian();
+            double east = (i / 600) * 100d + random.nextGaussian();
+            encoder.write(sample.set(45d + north / METERS_PER_DEGREE, 5d + east / METERS_PER_DEGREE,
+                    5f, true, 15f, i * 1000L, LocationSample.PROVIDER_GPS));
+        }
+        encoder.close();
+
+        assertThat(encoder.getInputCount()).isEqualTo(count);
+        assertThat(bytes.size() * 10).isLessThan(count * RAW_SIZE);
+
+        // the last location is always kept
+        TrackDecoder decoder = new TrackDecoder(new ByteArrayInputStream(bytes.toByteArray()));
+        long decoded = 0;
+        while (decoder.read(sample)) {
+            decoded++;
+        }
+        assertThat(decoded).isEqualTo(encoder.getOutputCount());
+        assertThat(sample.time).isEqualTo((count - 1) * 1000L);
+    }
+
+    @Test
+    public void shouldKeepLocationsAwayFromTheLine() throws IOException {
+        TrackEncoder encoder = new TrackEncoder(bytes, 5f, TrackEncoder.DEFAULT_WINDOW_SIZE);
+        encoder.write(sample.set(45d, 5d, 5f, true, 0f, 0L, LocationSample.PROVIDER_GPS));
+        encoder.write(sample.set(45d + 100d / METERS_PER_DEGREE, 5d, 5f, true, 0f, 1000L, LocationSample.PROVIDER_GPS));
+        // back to the start: the corner is 100 meters away from the line
+        encoder.write(sample.set(45d, 5d, 5f, true, 0f, 2000L, LocationSample.PROVIDER_GPS));
+        encoder.close();
+
+        assertThat(encoder.getOutputCount()).isEqualTo(3L);
+    }
+
+    @Test
+    public void shouldKeepMissingAccuracy() throws IOException {
+        TrackEncoder encoder = new TrackEncoder(bytes);
+        encoder.write(sample.set(45d, 5d, 0f, false, 0f, 0L, LocationSample.PROVIDER_NETWORK));
+        encoder.write(sample.set(45d, 5d, 0.01f, true, 0f, 1000L, LocationSample.PROVIDER_GPS));
+        encoder.close();
+
+        TrackDecoder decoder = new TrackDecoder(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThat(decoder.read(sample)).isTrue();
+        assertThat(sample.hasAccuracy).isFalse();
+        // the smallest known accuracy is kept as known
+        assertThat(decoder.read(sample)).isTrue();
+        assertThat(sample.hasAccuracy).isTrue();
+        assertThat(sample.accuracy).isCloseTo(0.1f, within(1e-6f));
+    }
+}
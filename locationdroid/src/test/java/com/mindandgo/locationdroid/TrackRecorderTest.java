@@ -0,0 +1,78 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class TrackRecorderTest {
+
+    private TrackRecorder recorder;
+    private LocationSample sample;
+
+    @Before
+    public void init() {
+        recorder = new TrackRecorder(3);
+        sample = new LocationSample();
+    }
+
+    @Test
+    public void shouldIterateFromOldestToNewest() {
+        append(1L);
+        append(2L);
+
+        TrackRecorder.Cursor cursor = recorder.cursor();
+        assertThat(cursor.next()).isTrue();
+        assertThat(cursor.getTime()).isEqualTo(1L);
+        assertThat(cursor.getProvider()).isEqualTo(LocationSample.PROVIDER_GPS);
+        assertThat(cursor.next()).isTrue();
+        assertThat(cursor.getTime()).isEqualTo(2L);
+        assertThat(cursor.next()).isFalse();
+    }
+
+    @Test
+    public void shouldOverwriteOldestPointsWhenFull() {
+        for (long time = 1L; time <= 5L; time++) {
+            append(time);
+        }
+
+        assertThat(recorder.size()).isEqualTo(3);
+        assertThat(recorder.getAppendCount()).isEqualTo(5L);
+        assertThat(recorder.get(0, sample).time).isEqualTo(3L);
+        assertThat(recorder.get(2, sample).time).isEqualTo(5L);
+
+        TrackRecorder.Cursor cursor = recorder.cursor();
+        long expected = 3L;
+        while (cursor.next()) {
+            assertThat(cursor.getTime()).isEqualTo(expected++);
+        }
+        assertThat(expected).isEqualTo(6L);
+    }
+
+    @Test
+    public void shouldBeEmptyAfterClear() {
+        append(1L);
+        TrackRecorder.Cursor cursor = recorder.cursor();
+        recorder.clear();
+
+        cursor.reset();
+        assertThat(cursor.next()).isFalse();
+        assertThat(recorder.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldKeepMissingAccuracy() {
+        recorder.append(sample.set(45d, 5d, 0f, false, 0f, 1L, LocationSample.PROVIDER_NETWORK));
+        append(2L);
+
+        assertThat(recorder.get(0, sample).hasAccuracy).isFalse();
+        assertThat(recorder.get(1, sample).hasAccuracy).isTrue();
+        TrackRecorder.Cursor cursor = recorder.cursor();
+        cursor.next();
+        assertThat(cursor.hasAccuracy()).isFalse();
+    }
+
+    private void append(long time) {
+        recorder.append(sample.set(45d, 5d, 5f, true, 1f, time, LocationSample.PROVIDER_GPS));
+    }
+}
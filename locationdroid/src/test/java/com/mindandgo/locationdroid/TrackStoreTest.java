@@ -0,0 +1,165 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class TrackStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private LocationSample sample;
+
+    @Before
+    public void init() throws IOException {
+        directory = folder.newFolder("track");
+        sample = new LocationSample();
+    }
+
+    @Test
+    public void shouldReadLocationsAcrossSegmentsAfterReopen() throws IOException {
+        TrackStore store = new TrackStore(directory, 4);
+        for (long time = 0L; time < 10L; time++) {
+            append(store, time);
+        }
+        store.close();
+
+        assertThat(directory.listFiles()).hasSize(3);
+
+        store = new TrackStore(directory, 4);
+        assertThat(store.size()).isEqualTo(10L);
+        TrackStore.Cursor cursor = store.cursor();
+        long expected = 0L;
+        while (cursor.next()) {
+            assertThat(cursor.getTime()).isEqualTo(expected);
+            assertThat(cursor.getLatitude()).isEqualTo(45d + expected);
+            expected++;
+        }
+        assertThat(expected).isEqualTo(10L);
+
+        // appending goes on after the recovered locations
+        append(store, 10L);
+        assertThat(store.size()).isEqualTo(11L);
+        store.close();
+    }
+
+    @Test
+    public void shouldReadByTimeRange() throws IOException {
+        TrackStore store = new TrackStore(directory, 4);
+        for (long time = 0L; time < 20L; time++) {
+            append(store, time * 10L);
+        }
+
+        TrackStore.Cursor cursor = store.cursor(55L, 120L);
+        long expected = 60L;
+        while (cursor.next()) {
+            assertThat(cursor.getTime()).isEqualTo(expected);
+            expected += 10L;
+        }
+        assertThat(expected).isEqualTo(130L);
+        store.close();
+    }
+
+    @Test
+    public void shouldReadFromSegmentStart() throws IOException {
+        TrackStore store = new TrackStore(directory, 4);
+        for (long time = 0L; time < 12L; time++) {
+            append(store, time);
+        }
+
+        // the second and third segments start at 4 and 8
+        assertThat(count(store.cursor(4L, Long.MAX_VALUE), 4L)).isEqualTo(8);
+        assertThat(count(store.cursor(8L, Long.MAX_VALUE), 8L)).isEqualTo(4);
+        store.close();
+    }
+
+    @Test
+    public void shouldReadFromTimeBetweenSegments() throws IOException {
+        TrackStore store = new TrackStore(directory, 4);
+        for (long time = 0L; time < 12L; time++) {
+            append(store, time * 10L);
+        }
+
+        // after the last location of the first segment, before the first one of the second
+        TrackStore.Cursor cursor = store.cursor(35L, Long.MAX_VALUE);
+        assertThat(cursor.next()).isTrue();
+        assertThat(cursor.getTime()).isEqualTo(40L);
+        int count = 1;
+        while (cursor.next()) {
+            count++;
+        }
+        assertThat(count).isEqualTo(8);
+        assertThat(cursor.next()).isFalse();
+        store.close();
+    }
+
+    @Test
+    public void shouldKeepMissingAccuracy() throws IOException {
+        TrackStore store = new TrackStore(directory, 4);
+        store.append(sample.set(45d, 5d, 0f, false, 0f, 1L, LocationSample.PROVIDER_UNKNOWN));
+        append(store, 2L);
+
+        TrackStore.Cursor cursor = store.cursor();
+        assertThat(cursor.next()).isTrue();
+        assertThat(cursor.get(sample).hasAccuracy).isFalse();
+        assertThat(sample.provider).isEqualTo(LocationSample.PROVIDER_UNKNOWN);
+        assertThat(cursor.next()).isTrue();
+        assertThat(cursor.get(sample).hasAccuracy).isTrue();
+        assertThat(sample.provider).isEqualTo(LocationSample.PROVIDER_GPS);
+        store.close();
+    }
+
+    @Test
+    public void shouldDropTornRecordOnRecovery() throws IOException {
+        TrackStore store = new TrackStore(directory, 8);
+        append(store, 1L);
+        append(store, 2L);
+        store.close();
+
+        // a process death in the middle of the third record: only its time is written
+        RandomAccessFile file = new RandomAccessFile(directory.listFiles()[0], "rw");
+        file.seek(2 * TrackStore.RECORD_SIZE);
+        file.writeLong(3L);
+        file.close();
+
+        store = new TrackStore(directory, 8);
+        assertThat(store.size()).isEqualTo(2L);
+        append(store, 4L);
+        TrackStore.Cursor cursor = store.cursor(3L, Long.MAX_VALUE);
+        assertThat(cursor.next()).isTrue();
+        assertThat(cursor.getTime()).isEqualTo(4L);
+        assertThat(cursor.next()).isFalse();
+        store.close();
+    }
+
+    @Test
+    public void shouldIgnoreOlderLocations() throws IOException {
+        TrackStore store = new TrackStore(directory, 4);
+        append(store, 5L);
+        assertThat(store.append(sample.set(45d, 5d, 5f, true, 0f, 4L, LocationSample.PROVIDER_GPS))).isFalse();
+        assertThat(store.size()).isEqualTo(1L);
+        store.close();
+    }
+
+    private static int count(TrackStore.Cursor cursor, long firstTime) throws IOException {
+        int count = 0;
+        while (cursor.next()) {
+            assertThat(cursor.getTime()).isEqualTo(firstTime + count);
+            count++;
+        }
+        return count;
+    }
+
+    private void append(TrackStore store, long time) throws IOException {
+        assertThat(store.append(sample.set(45d + time, 5d, 5f, true, 1f, time, LocationSample.PROVIDER_GPS))).isTrue();
+    }
+}
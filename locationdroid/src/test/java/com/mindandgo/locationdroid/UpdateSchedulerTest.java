@@ -0,0 +1,71 @@
+package com.mindandgo.locationdroid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class UpdateSchedulerTest {
+
+    private LocationSelector selector;
+    private UpdateScheduler scheduler;
+
+    @Before
+    public void init() {
+        // 10 meters, 30 seconds
+        selector = new LocationSelector();
+        scheduler = new UpdateScheduler();
+        scheduler.reset(30000L);
+    }
+
+    @Test
+    public void shouldShortenIntervalAtOnceWhenDriving() {
+        // 10(meters) / 20 (meter/second) = 0.5 second, bounded by the 1 second min interval
+        assertThat(scheduler.update(selector, 20f, 0L)).isEqualTo(1000L);
+        assertThat(scheduler.update(selector, 20f, 1000L)).isEqualTo(UpdateScheduler.NO_CHANGE);
+    }
+
+    @Test
+    public void shouldLengthenIntervalAfterDwellTime() {
+        scheduler.update(selector, 20f, 0L);
+
+        // the car stops
+        for (long time = 1000L; time < 20000L; time += 1000L) {
+            assertThat(scheduler.update(selector, 0f, time)).isEqualTo(UpdateScheduler.NO_CHANGE);
+        }
+        long interval = UpdateScheduler.NO_CHANGE;
+        for (long time = 20000L; time <= 60000L && interval == UpdateScheduler.NO_CHANGE; time += 1000L) {
+            interval = scheduler.update(selector, 0f, time);
+        }
+        // above the 30 seconds max time between updates of the selector
+        assertThat(interval).isEqualTo(120000L);
+    }
+
+    @Test
+    public void shouldBoundIntervalOfSlowSpeed() {
+        scheduler.update(selector, 20f, 0L);
+
+        // 10(meters) / 0.05 (meter/second) = 200 seconds, bounded by the 2 minutes max interval
+        long interval = UpdateScheduler.NO_CHANGE;
+        for (long time = 1000L; time <= 120000L && interval == UpdateScheduler.NO_CHANGE; time += 1000L) {
+            interval = scheduler.update(selector, 0.05f, time);
+        }
+        assertThat(interval).isEqualTo(120000L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMaxIntervalLowerThanMinInterval() {
+        new UpdateScheduler(1000L, 500L, 2f, 30000L);
+    }
+
+    @Test
+    public void shouldIgnoreSmallSpeedChanges() {
+        // 10(meters) / 1.4 (meter/second) = 7.1 seconds
+        assertThat(scheduler.update(selector, 1.4f, 0L)).isEqualTo(7142L);
+        // 10(meters) / 1.0 (meter/second) = 10 seconds, within the hysteresis
+        for (long time = 1000L; time < 120000L; time += 1000L) {
+            assertThat(scheduler.update(selector, 1.0f, time)).isEqualTo(UpdateScheduler.NO_CHANGE);
+        }
+        assertThat(scheduler.getInterval()).isEqualTo(7142L);
+    }
+}